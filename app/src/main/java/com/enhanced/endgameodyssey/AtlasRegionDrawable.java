@@ -0,0 +1,68 @@
+package com.enhanced.endgameodyssey;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Draws one cell of the ThumbnailAtlas, scaled into its bounds.
+ *
+ * Each list row keeps a single instance and only moves its region when it is rebound, so showing a
+ * thumbnail allocates nothing and decodes nothing, it is one bitmap blit when the row is drawn.
+ */
+public class AtlasRegionDrawable extends Drawable {
+
+    private final ThumbnailAtlas atlas;
+    private final Rect region = new Rect();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    public AtlasRegionDrawable(ThumbnailAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    // Points the drawable at the movie's cell, returns false if the atlas has no thumbnail for it
+    public boolean setImageFilename(String imageFilename) {
+        if (!atlas.findRegion(imageFilename, region)) return false;
+
+        invalidateSelf();
+        return true;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        canvas.drawBitmap(atlas.getBitmap(), region, getBounds(), paint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return atlas.getCellWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return atlas.getCellHeight();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return paint.getAlpha() == 255 ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+    }
+}
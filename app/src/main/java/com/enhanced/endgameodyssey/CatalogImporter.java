@@ -0,0 +1,489 @@
+package com.enhanced.endgameodyssey;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Imports a third-party catalog (other franchises, TV episodes...) of any size from a CSV or JSON file and
+ * adds it to the catalog that is installed.
+ * <p>
+ * The CSV has a header row naming its columns: key, title, description, releaseDate, runtimeMinutes,
+ * timelinePosition and rating, in any order. Fields with commas, quotes or line breaks are quoted as usual.
+ * The JSON is an array of objects with the same fields, either on its own or as the first array in the
+ * file (so a catalog feed, see CatalogUpdater, can be imported too). The key of a movie is its imageFilename.
+ * <p>
+ * The import is a pipeline of three stages so that a file of hundreds of thousands of rows takes seconds:
+ * <ul>
+ *     <li>The reader, a thread of its own, streams the file and cuts it into chunks of CHUNK_SIZE records
+ *     without parsing them, it only has to find where a record ends.</li>
+ *     <li>The chunks are parsed and validated in parallel on a ForkJoinPool, each into a batch of CatalogMovies.
+ *     A record that isn't a valid movie, e.g. one without a timelinePosition, is skipped and counted.</li>
+ *     <li>The writer, the thread that called read(), takes the batches out of a bounded queue as they come and
+ *     hands each one to the MovieDatabase.WRITER, which inserts it with one bulk insert in one transaction. The
+ *     WRITER is only held for one batch at a time, so a watch action taken during the import waits for that
+ *     batch and not for the whole file.</li>
+ * </ul>
+ * The reader can't get more than MAX_CHUNKS_IN_FLIGHT chunks ahead of the writer, so the memory an import
+ * takes doesn't depend on the size of the file.
+ * <p>
+ * A movie whose key is already in the catalog is updated in place and keeps its id, so the watch state of
+ * every profile is preserved and importing the same file again changes nothing. Each batch commits on its
+ * own, an import that fails halfway leaves the batches before it and can simply be run again.
+ */
+public final class CatalogImporter {
+
+    private static final String TAG = "CatalogImporter";
+
+    private static final int CHUNK_SIZE = 2000;
+    private static final int MAX_CHUNKS_IN_FLIGHT = 8;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Put in the queue by the reader after the last batch
+    private static final Batch END = new Batch(new ArrayList<CatalogMovie>(0), 0);
+
+    private CatalogImporter() {
+    }
+
+    private static class Batch {
+        private final List<CatalogMovie> movies;
+        private final int skipped;
+
+        private Batch(List<CatalogMovie> movies, int skipped) {
+            this.movies = movies;
+            this.skipped = skipped;
+        }
+    }
+
+    // Imports the catalog read from in and returns the number of movies inserted or updated. Must be called on a
+    // background thread other than the MovieDatabase.WRITER, which becomes the writer. listener is called on it too.
+    public static int read(final MovieDatabase database, InputStream in, MovieBackup.ProgressListener listener) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), BUFFER_SIZE);
+
+        // One core is left to the reader and the writer
+        final ForkJoinPool parsers = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        final Semaphore chunksInFlight = new Semaphore(MAX_CHUNKS_IN_FLIGHT);
+
+        // Never blocks, there can't be more batches than chunks in flight
+        final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(MAX_CHUNKS_IN_FLIGHT + 1);
+
+        final AtomicInteger recordsRead = new AtomicInteger();
+        final AtomicReference<Exception> readFailure = new AtomicReference<>();
+
+        Thread readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RecordSource source = RecordSource.open(reader);
+                    List<String> chunk;
+
+                    while ((chunk = source.nextChunk(CHUNK_SIZE)) != null) {
+                        chunksInFlight.acquire();
+                        recordsRead.addAndGet(chunk.size());
+                        parsers.execute(new ParseChunk(source, chunk, batches));
+                    }
+                } catch (InterruptedException e) {
+                    // The writer gave up
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    readFailure.set(e);
+                }
+
+                // Also when the file couldn't be read to its end, so no batch is still being parsed, and then
+                // queued behind the END, once the writer has returned
+                parsers.shutdown();
+                try {
+                    parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                batches.add(END);
+            }
+        }, TAG);
+        readerThread.start();
+
+        int imported = 0;
+        int skipped = 0;
+        boolean finished = false;
+
+        try {
+            Batch batch;
+            while ((batch = batches.take()) != END) {
+                write(database, batch.movies);
+                chunksInFlight.release();
+
+                imported += batch.movies.size();
+                skipped += batch.skipped;
+                listener.onProgress(imported, Math.max(imported, recordsRead.get() - skipped));
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            throw new IOException("Import interrupted", e);
+        } finally {
+            if (!finished) {
+                readerThread.interrupt();
+                parsers.shutdownNow();
+            }
+            closeQuietly(reader);
+        }
+
+        if (readFailure.get() != null) {
+            throw new IOException("Could not read the catalog", readFailure.get());
+        }
+        if (skipped > 0) {
+            Log.w(TAG, "Skipped " + skipped + " invalid records");
+        }
+        return imported;
+    }
+
+    // Inserts the new movies and updates the ones whose key is already in the catalog, in one transaction
+    // on the MovieDatabase.WRITER
+    private static void write(final MovieDatabase database, final List<CatalogMovie> movies) {
+        MovieDatabase.runOnWriter(new Callable<Void>() {
+            @Override
+            public Void call() {
+                database.runInTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        MovieDAO movieDAO = database.movieDAO();
+                        long[] rowIds = movieDAO.insertNew(movies);
+
+                        for (int i = 0; i < rowIds.length; i++) {
+                            if (rowIds[i] == -1) {
+                                CatalogMovie movie = movies.get(i);
+                                movieDAO.updateCatalogEntry(movie.getImageFilename(), movie.getTitle(), movie.getSynopsis(),
+                                        movie.getDescriptionDeflated(), movie.getReleaseDate(), movie.getRuntimeMinutes(),
+                                        movie.getTimelinePosition(), movie.getRating());
+                            }
+                        }
+                    }
+                });
+                return null;
+            }
+        });
+    }
+
+    private static void closeQuietly(Reader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // Nothing left to read anyway
+        }
+    }
+
+    // Runs on the ForkJoinPool
+    private static class ParseChunk implements Runnable {
+
+        private final RecordSource source;
+        private final List<String> records;
+        private final BlockingQueue<Batch> batches;
+
+        private ParseChunk(RecordSource source, List<String> records, BlockingQueue<Batch> batches) {
+            this.source = source;
+            this.records = records;
+            this.batches = batches;
+        }
+
+        @Override
+        public void run() {
+            List<CatalogMovie> movies = new ArrayList<>(records.size());
+
+            for (String record : records) {
+                CatalogMovie movie;
+                try {
+                    movie = source.parse(record);
+                } catch (IOException | RuntimeException e) {
+                    // NumberFormatException, IllegalStateException from the JsonReader...
+                    movie = null;
+                }
+                if (movie != null) {
+                    // Encoded here in parallel rather than by Room on the writer
+                    movie.getSynopsis();
+                    movie.getDescriptionDeflated();
+                    movies.add(movie);
+                }
+            }
+
+            batches.add(new Batch(movies, records.size() - movies.size()));
+        }
+    }
+
+    // The movie of a record, null if it isn't a valid one. The timeline starts at 1, so a record without a
+    // timelinePosition (read as 0) is skipped rather than put in front of the first movie.
+    private static CatalogMovie validate(String key, String title, String description, String releaseDate,
+                                         int runtimeMinutes, int timelinePosition, float rating) {
+        if (key == null || key.isEmpty() || title == null || title.isEmpty()) return null;
+        if (timelinePosition < 1 || runtimeMinutes < 0 || !(rating >= 0 && rating <= 10)) return null;
+
+        return new CatalogMovie(title, description != null ? description : "", key,
+                releaseDate != null ? releaseDate : "", runtimeMinutes, timelinePosition, rating);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Formats
+
+    // Cuts the file into records on the reader thread and parses a record on any thread
+    private abstract static class RecordSource {
+
+        // Picks the format by the first character of the file
+        static RecordSource open(BufferedReader reader) throws IOException {
+            reader.mark(BUFFER_SIZE);
+            int c;
+            do {
+                c = reader.read();
+            } while (c != -1 && Character.isWhitespace(c));
+            reader.reset();
+
+            return c == '[' || c == '{' ? new JsonSource(reader) : new CsvSource(reader);
+        }
+
+        // Up to size records, null at the end of the file
+        abstract List<String> nextChunk(int size) throws IOException;
+
+        abstract CatalogMovie parse(String record) throws IOException;
+    }
+
+    private static class CsvSource extends RecordSource {
+
+        private final BufferedReader reader;
+
+        // Column name (lower case) to its index, written by the reader thread before any record is parsed
+        private final Map<String, Integer> columns = new HashMap<>();
+
+        private CsvSource(BufferedReader reader) throws IOException {
+            this.reader = reader;
+
+            String header = nextRecord();
+            if (header == null) throw new IOException("Empty catalog");
+
+            List<String> names = split(header);
+            for (int i = 0; i < names.size(); i++) {
+                columns.put(names.get(i).trim().toLowerCase(Locale.US), i);
+            }
+            if (!columns.containsKey("key") || !columns.containsKey("title") || !columns.containsKey("timelineposition")) {
+                throw new IOException("The catalog needs at least a key, a title and a timelinePosition column");
+            }
+        }
+
+        @Override
+        List<String> nextChunk(int size) throws IOException {
+            List<String> chunk = new ArrayList<>(size);
+            String record;
+            while (chunk.size() < size && (record = nextRecord()) != null) {
+                if (!record.isEmpty()) {
+                    chunk.add(record);
+                }
+            }
+            return chunk.isEmpty() ? null : chunk;
+        }
+
+        // One line, or more if a quoted field has line breaks in it
+        private String nextRecord() throws IOException {
+            String line = reader.readLine();
+            if (line == null) return null;
+
+            StringBuilder record = null;
+            while (countQuotes(record != null ? record : line) % 2 != 0) {
+                String next = reader.readLine();
+                if (next == null) break;
+
+                if (record == null) record = new StringBuilder(line);
+                record.append('\n').append(next);
+            }
+            return record != null ? record.toString() : line;
+        }
+
+        private static int countQuotes(CharSequence text) {
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') count++;
+            }
+            return count;
+        }
+
+        @Override
+        CatalogMovie parse(String record) {
+            List<String> fields = split(record);
+            return validate(field(fields, "key"), field(fields, "title"), field(fields, "description"),
+                    field(fields, "releasedate"), number(fields, "runtimeminutes"), number(fields, "timelineposition"),
+                    decimal(fields, "rating"));
+        }
+
+        private String field(List<String> fields, String column) {
+            Integer index = columns.get(column);
+            return index != null && index < fields.size() ? fields.get(index) : null;
+        }
+
+        private int number(List<String> fields, String column) {
+            String value = field(fields, column);
+            return value == null || value.isEmpty() ? 0 : Integer.parseInt(value.trim());
+        }
+
+        private float decimal(List<String> fields, String column) {
+            String value = field(fields, column);
+            return value == null || value.isEmpty() ? 0 : Float.parseFloat(value.trim());
+        }
+
+        // The fields of a record, with the quotes of quoted fields removed and "" turned into "
+        private static List<String> split(String record) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+
+            for (int i = 0; i < record.length(); i++) {
+                char c = record.charAt(i);
+
+                if (quoted) {
+                    if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    private static class JsonSource extends RecordSource {
+
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int length;
+
+        // How deep the scanner is in the array of movies, -1 before the array and once it has ended
+        private int depth = -1;
+        private boolean ended;
+
+        private JsonSource(Reader reader) {
+            this.reader = reader;
+        }
+
+        // Only scans the text for where each object of the array starts and ends, the JsonReader
+        // of parse() does the actual parsing in parallel
+        @Override
+        List<String> nextChunk(int size) throws IOException {
+            List<String> chunk = new ArrayList<>(size);
+            StringBuilder object = new StringBuilder(512);
+            boolean inString = false;
+            boolean escaped = false;
+
+            int c;
+            while (!ended && chunk.size() < size && (c = nextChar()) != -1) {
+                if (depth > 0) object.append((char) c);
+
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (depth == -1) {
+                    // Everything up to the first array is skipped
+                    if (c == '[') depth = 0;
+                } else if (c == '{' || c == '[') {
+                    if (depth == 0) object.append((char) c);
+                    depth++;
+                } else if (c == '}' || (c == ']' && depth > 0)) {
+                    depth--;
+                    if (depth == 0) {
+                        chunk.add(object.toString());
+                        object.setLength(0);
+                    }
+                } else if (c == ']') {
+                    ended = true;
+                }
+            }
+
+            if (!ended && depth != 0 && chunk.size() < size) {
+                throw new IOException("The catalog ends in the middle of a movie");
+            }
+            return chunk.isEmpty() ? null : chunk;
+        }
+
+        private int nextChar() throws IOException {
+            if (position == length) {
+                length = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (length <= 0) {
+                    length = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        @Override
+        CatalogMovie parse(String record) throws IOException {
+            String key = null, title = null, description = null, releaseDate = null;
+            int runtimeMinutes = 0, timelinePosition = 0;
+            float rating = 0;
+
+            JsonReader reader = new JsonReader(new StringReader(record));
+            try {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    switch (name) {
+                        case "key":
+                        case "imageFilename": key = reader.nextString(); break;
+                        case "title": title = reader.nextString(); break;
+                        case "description": description = reader.nextString(); break;
+                        case "releaseDate": releaseDate = reader.nextString(); break;
+                        case "runtimeMinutes": runtimeMinutes = reader.nextInt(); break;
+                        case "timelinePosition": timelinePosition = reader.nextInt(); break;
+                        case "rating": rating = (float) reader.nextDouble(); break;
+                        default: reader.skipValue(); break;
+                    }
+                }
+                reader.endObject();
+            } finally {
+                reader.close();
+            }
+
+            return validate(key, title, description, releaseDate, runtimeMinutes, timelinePosition, rating);
+        }
+    }
+}
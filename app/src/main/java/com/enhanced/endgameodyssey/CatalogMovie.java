@@ -0,0 +1,120 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * This is the CatalogMovie entity which represents the movie table in the MovieDatabase.
+ * It is a simple class that is annotated with @Entity so that Room will know that this is an entity
+ * of the MovieDatabase.
+ *
+ * It only holds what every viewer shares, the catalog. Whether a movie is watched or current depends on
+ * the profile and is stored in the WatchState entity instead. The two are joined back together into a
+ * Movie by the MovieDAO queries.
+ *
+ * We do not set/update any data directly onto the CatalogMovie class instances.
+ * We update them on the database directly using this entity's Data Access Object,
+ * the MovieDAO class.
+ *
+ * The imageFilename doubles as the stable key of a movie (see CatalogUpdater) which is why it is unique.
+ *
+ * The description isn't a column of its own. It is stored deflated next to a short synopsis for the list,
+ * see DescriptionCodec. A CatalogMovie created from a plain description only encodes it when Room asks for
+ * the columns, and one read from the database only inflates it when getDescription() is called.
+ */
+@Entity(tableName = "movie_table", indices = {@Index(value = "imageFilename", unique = true)})
+public class CatalogMovie {
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+
+    // Constants
+    private String title;
+    private String synopsis;
+    private byte[] descriptionDeflated;
+    private String imageFilename;
+    private String releaseDate;
+
+    private int runtimeMinutes;
+    private int timelinePosition;
+    private float rating;
+
+    // The plain description, null until it is inflated if the movie was read from the database
+    @Ignore
+    private String description;
+
+    // Used by Room
+    public CatalogMovie(String title, String synopsis, byte[] descriptionDeflated, String imageFilename, String releaseDate, int runtimeMinutes, int timelinePosition, float rating) {
+        this(title, null, imageFilename, releaseDate, runtimeMinutes, timelinePosition, rating);
+        this.synopsis = synopsis;
+        this.descriptionDeflated = descriptionDeflated;
+    }
+
+    @Ignore
+    public CatalogMovie(String title, String description, String imageFilename, String releaseDate, int runtimeMinutes, int timelinePosition, float rating) {
+        this.title = title;
+        this.description = description;
+        this.releaseDate = releaseDate;
+        this.runtimeMinutes = runtimeMinutes;
+        this.timelinePosition = timelinePosition;
+        this.rating = rating;
+        this.imageFilename = imageFilename;
+    }
+
+    // Setters
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        if (description == null) {
+            description = DescriptionCodec.inflate(descriptionDeflated);
+        }
+        return description;
+    }
+
+    public String getSynopsis() {
+        if (synopsis == null) {
+            synopsis = DescriptionCodec.synopsis(description);
+        }
+        return synopsis;
+    }
+
+    public byte[] getDescriptionDeflated() {
+        if (descriptionDeflated == null) {
+            descriptionDeflated = DescriptionCodec.deflate(description);
+        }
+        return descriptionDeflated;
+    }
+
+    public String getImageFilename() {
+        return imageFilename;
+    }
+
+    public String getReleaseDate() {
+        return releaseDate;
+    }
+
+    public int getTimelinePosition() {
+        return timelinePosition;
+    }
+
+    public float getRating() {
+        return rating;
+    }
+
+    public int getRuntimeMinutes() {
+        return runtimeMinutes;
+    }
+}
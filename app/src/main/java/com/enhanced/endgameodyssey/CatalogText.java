@@ -0,0 +1,154 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Puts the titles and descriptions of the catalog in the language of the device into the movie_table.
+ * <p>
+ * The text of each language is a text pack, the text/&lt;language&gt;.pack asset generated by the
+ * generateTextPacks task in app/build.gradle:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    count
+ * count times:
+ *     UTF    key             the imageFilename of the movie
+ *     UTF    title
+ *     int    length
+ *     byte[length]           the description as UTF-8
+ * </pre>
+ * Only the pack of the language in use is read, and only when that language changes. Its text replaces
+ * the text of the same movies in one transaction, one indexed update per movie, so the ids and with them
+ * every profile's watch state are left alone. The database and the MovieCatalog only ever hold one language.
+ * Movies that the pack doesn't have (an untranslated title or a movie from a catalog update) keep their text.
+ * <p>
+ * The pack that was applied is saved in the SharedPreferences after the transaction commits, together with
+ * the version of the database, so a database that was recreated and seeded again gets its pack again.
+ * A catalog update writes the text of its feed over the movies it changes, so it forgets the pack and the
+ * pack is applied again on top of it.
+ */
+public final class CatalogText {
+
+    private static final String PREFERENCES = "catalog";
+    private static final String KEY_TEXT_PACK = "text_pack";
+
+    private static final String PACK_DIRECTORY = "text";
+    private static final String PACK_EXTENSION = ".pack";
+    private static final String DEFAULT_PACK = "en";
+
+    private static final int MAGIC = 0x45474F4C; // "EGOL"
+    private static final int VERSION = 1;
+
+    private final MovieDatabase database;
+    private final AssetManager assets;
+    private final SharedPreferences preferences;
+
+    // The packs that were built into the app, sorted
+    private String[] packs;
+
+    public CatalogText(Context context, MovieDatabase database) {
+        this.database = database;
+        this.assets = context.getApplicationContext().getAssets();
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    // The pack for the locale: the one of its language and country (pt-BR), else of its language (pt),
+    // else the English one
+    public synchronized String findPack(Locale locale) throws IOException {
+        if (packs == null) {
+            List<String> names = new ArrayList<>();
+            for (String file : assets.list(PACK_DIRECTORY)) {
+                if (file.endsWith(PACK_EXTENSION)) {
+                    names.add(file.substring(0, file.length() - PACK_EXTENSION.length()));
+                }
+            }
+            packs = names.toArray(new String[0]);
+            Arrays.sort(packs);
+        }
+
+        String languageAndCountry = locale.getLanguage() + "-" + locale.getCountry();
+        if (Arrays.binarySearch(packs, languageAndCountry) >= 0) return languageAndCountry;
+        if (Arrays.binarySearch(packs, locale.getLanguage()) >= 0) return locale.getLanguage();
+        return DEFAULT_PACK;
+    }
+
+    public boolean isApplied(String pack) {
+        return appliedValue(pack).equals(preferences.getString(KEY_TEXT_PACK, null));
+    }
+
+    // Called once the text of the movie_table was replaced by something else than a pack, the next apply()
+    // of any pack goes ahead even if it is the one that was applied last
+    public void forget() {
+        preferences.edit().remove(KEY_TEXT_PACK).apply();
+    }
+
+    // Reads the pack and puts its text into the movie_table. Must be called on a background thread.
+    // Returns the number of movies whose text was replaced.
+    public int apply(String pack) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(
+                assets.open(PACK_DIRECTORY + "/" + pack + PACK_EXTENSION)));
+
+        final List<String> keys = new ArrayList<>();
+        final List<String> titles = new ArrayList<>();
+        final List<String> descriptions = new ArrayList<>();
+
+        try {
+            if (data.readInt() != MAGIC || data.readInt() > VERSION) {
+                throw new IOException("Not a text pack this version can read");
+            }
+
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                keys.add(data.readUTF());
+                titles.add(data.readUTF());
+
+                byte[] description = new byte[data.readInt()];
+                data.readFully(description);
+                descriptions.add(new String(description, "UTF-8"));
+            }
+        } finally {
+            data.close();
+        }
+
+        // Encoded before the transaction so it is only as long as the updates
+        final String[] synopses = new String[keys.size()];
+        final byte[][] deflated = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            synopses[i] = DescriptionCodec.synopsis(descriptions.get(i));
+            deflated[i] = DescriptionCodec.deflate(descriptions.get(i));
+        }
+
+        int updated = database.runInTransaction(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                MovieDAO movieDAO = database.movieDAO();
+                int updated = 0;
+                for (int i = 0; i < keys.size(); i++) {
+                    updated += movieDAO.updateText(keys.get(i), titles.get(i), synopses[i], deflated[i]);
+                }
+                return updated;
+            }
+        });
+
+        // Nothing was updated if the catalog hasn't been seeded yet, the pack is applied again next time
+        if (updated > 0) {
+            preferences.edit().putString(KEY_TEXT_PACK, appliedValue(pack)).apply();
+        }
+        return updated;
+    }
+
+    private static String appliedValue(String pack) {
+        return pack + "@" + MovieDatabase.VERSION;
+    }
+}
@@ -0,0 +1,237 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Brings the catalog up to date from a versioned JSON feed without a new app release or a database migration.
+ * <p>
+ * The feed looks like this:
+ * <pre>
+ * {
+ *   "version": 3,
+ *   "movies": [
+ *     { "key": "spider_man2", "version": 3, "title": "...", "description": "...", "releaseDate": "...",
+ *       "runtimeMinutes": 129, "timelinePosition": 23, "rating": 7.5 },
+ *     { "key": "hulk", "version": 2, "deleted": true }
+ *   ]
+ * }
+ * </pre>
+ * The key of a movie is its imageFilename, which is unique and never changes. Each entry carries the catalog
+ * version in which it last changed, so the streaming parser skips every entry we already have without
+ * building it and only the entries newer than the installed version (the delta) are kept.
+ * The feed is downloaded and parsed on the calling thread, and only the delta is then handed to the
+ * MovieDatabase.WRITER and applied in one transaction, each entry with a single indexed lookup by key, so a slow
+ * network never holds up the other writes. Only the catalog is touched so every profile's watched and current
+ * state of existing movies is preserved.
+ * <p>
+ * The installed version is saved in the SharedPreferences after the transaction commits. If the app dies
+ * in between the delta is simply applied again on the next update, which changes nothing.
+ */
+public final class CatalogUpdater {
+
+    private static final String PREFERENCES = "catalog";
+    private static final String KEY_VERSION = "version";
+
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    private final MovieDatabase database;
+    private final SharedPreferences preferences;
+
+    public CatalogUpdater(Context context, MovieDatabase database) {
+        this.database = database;
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    public int getInstalledVersion() {
+        return preferences.getInt(KEY_VERSION, 0);
+    }
+
+    // Downloads the feed from url (e.g. a local stand-in server while testing) and applies it.
+    // Must be called on a background thread other than the MovieDatabase.WRITER. Returns the number of movies
+    // that were changed.
+    public int update(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Catalog feed returned HTTP " + connection.getResponseCode());
+            }
+            return update(connection.getInputStream());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Parses the feed from in and applies it. Must be called on a background thread other than the
+    // MovieDatabase.WRITER. Returns the number of movies that were changed.
+    public int update(InputStream in) throws IOException {
+        int installedVersion = getInstalledVersion();
+        final Feed feed = parse(in, installedVersion);
+
+        if (feed.version <= installedVersion) return 0;
+
+        return MovieDatabase.runOnWriter(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                apply(feed.changes);
+                preferences.edit().putInt(KEY_VERSION, feed.version).apply();
+                return feed.changes.size();
+            }
+        });
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Parsing
+
+    private static class Feed {
+        private int version;
+        private List<Entry> changes = new ArrayList<>();
+    }
+
+    private static class Entry {
+        private String key;
+        private int version;
+        private boolean deleted;
+        private String title;
+        private String description;
+        private String releaseDate;
+        private int runtimeMinutes;
+        private int timelinePosition;
+        private float rating;
+    }
+
+    private static Feed parse(InputStream in, int installedVersion) throws IOException {
+        Feed feed = new Feed();
+        JsonReader reader = new JsonReader(new InputStreamReader(new BufferedInputStream(in), "UTF-8"));
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (name.equals("version")) {
+                    feed.version = reader.nextInt();
+
+                    // Nothing new, don't bother reading the movies
+                    if (feed.version <= installedVersion) return feed;
+
+                } else if (name.equals("movies")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Entry entry = parseEntry(reader, installedVersion);
+                        if (entry != null) {
+                            feed.changes.add(entry);
+                        }
+                    }
+                    reader.endArray();
+
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+
+        // A feed without a top level version is treated as newer than anything installed
+        if (feed.version == 0) {
+            for (Entry entry : feed.changes) {
+                feed.version = Math.max(feed.version, entry.version);
+            }
+        }
+        return feed;
+    }
+
+    // Returns null for entries that are not newer than the installed catalog. The version is expected
+    // to come right after the key so that old entries are skipped without reading their text.
+    private static Entry parseEntry(JsonReader reader, int installedVersion) throws IOException {
+        Entry entry = new Entry();
+        boolean skip = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (skip || reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (name) {
+                case "key": entry.key = reader.nextString(); break;
+                case "version":
+                    entry.version = reader.nextInt();
+                    skip = entry.version <= installedVersion;
+                    break;
+                case "deleted": entry.deleted = reader.nextBoolean(); break;
+                case "title": entry.title = reader.nextString(); break;
+                case "description": entry.description = reader.nextString(); break;
+                case "releaseDate": entry.releaseDate = reader.nextString(); break;
+                case "runtimeMinutes": entry.runtimeMinutes = reader.nextInt(); break;
+                case "timelinePosition": entry.timelinePosition = reader.nextInt(); break;
+                case "rating": entry.rating = (float) reader.nextDouble(); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+
+        return skip || entry.key == null ? null : entry;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Applying
+
+    private void apply(final List<Entry> changes) {
+        database.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                MovieDAO movieDAO = database.movieDAO();
+                WatchStateDAO watchStateDAO = database.watchStateDAO();
+
+                for (Entry entry : changes) {
+                    Integer id = movieDAO.getIdByKey(entry.key);
+
+                    if (entry.deleted) {
+                        if (id != null) {
+                            watchStateDAO.deleteStatesOfMovie(id);
+                            movieDAO.deleteByKey(entry.key);
+                        }
+                    } else if (id != null) {
+                        movieDAO.updateCatalogEntry(entry.key, entry.title, DescriptionCodec.synopsis(entry.description),
+                                DescriptionCodec.deflate(entry.description), entry.releaseDate,
+                                entry.runtimeMinutes, entry.timelinePosition, entry.rating);
+                    } else {
+                        movieDAO.insert(new CatalogMovie(entry.title, entry.description, entry.key, entry.releaseDate,
+                                entry.runtimeMinutes, entry.timelinePosition, entry.rating));
+                    }
+                }
+
+                // If a profile's current movie was deleted, its first unwatched movie takes its place
+                for (int profileId : database.profileDAO().getProfileIds()) {
+                    if (watchStateDAO.getCurrentMovieCount(profileId) == 0) {
+                        Integer firstUnwatchedId = watchStateDAO.getFirstUnwatchedMovieId(profileId);
+                        if (firstUnwatchedId != null) {
+                            watchStateDAO.setState(new WatchState(profileId, firstUnwatchedId, false, true));
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
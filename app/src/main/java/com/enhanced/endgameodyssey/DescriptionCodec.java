@@ -0,0 +1,129 @@
+package com.enhanced.endgameodyssey;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * How the description of a movie is stored: deflated, with a short synopsis next to it for the list.
+ * <p>
+ * A description is a couple of hundred characters, too little for deflate to find much to repeat on its
+ * own. Every one is therefore deflated with the same preset DICTIONARY of the names and phrases the
+ * descriptions of the catalog keep using, which takes about a third off the bundled ones instead of a
+ * quarter. The first byte of a deflated description is the version of the dictionary it was deflated
+ * with, so the dictionary can only ever be replaced by a new version, never edited.
+ * <p>
+ * The synopsis is worked out once when a movie is stored and is all the list ever shows, the full
+ * description is only inflated for the details (see MovieCatalog.getDescription()).
+ */
+public final class DescriptionCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte DICTIONARY_VERSION = 1;
+
+    // Deflate looks back from the end of the dictionary, so the most common phrases come last
+    private static final byte[] DICTIONARY = ("Hulk Spider-Man Black Panther Doctor Strange Guardians of the Galaxy " +
+            "Ant-Man Wasp Thanos Infinity Stones S.H.I.E.L.D. Hydra Asgard Loki Thor Odin Ultron Tony Stark Iron Man " +
+            "Steve Rogers Captain America Bruce Banner Avengers a powerful villain the universe the world to save the " +
+            "Earth after the events of and his team must stop the war between in order to fight against with the help " +
+            "of becomes one of the most powerful heroes when he is forced to ").getBytes(UTF_8);
+
+    // About two lines of a list row
+    private static final int SYNOPSIS_LENGTH = 120;
+
+    private DescriptionCodec() {
+    }
+
+    public static byte[] deflate(String description) {
+        if (description == null || description.isEmpty()) return new byte[0];
+
+        byte[] input = description.getBytes(UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            out.write(DICTIONARY_VERSION);
+
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String inflate(byte[] deflated) {
+        return inflate(deflated, 0, deflated == null ? 0 : deflated.length);
+    }
+
+    // Inflates the description at deflated[offset..offset+length), "" if there is none
+    public static String inflate(byte[] deflated, int offset, int length) {
+        if (deflated == null || length == 0) return "";
+        if (deflated[offset] != DICTIONARY_VERSION) {
+            throw new IllegalArgumentException("Unknown description dictionary " + deflated[offset]);
+        }
+
+        // One extra byte of input that zlib needs to see the end of a raw deflate stream
+        byte[] input = new byte[length];
+        System.arraycopy(deflated, offset + 1, input, 0, length - 1);
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(input);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated description");
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt description", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // The first sentence of the description, cut at a word if that is still too long for the list
+    public static String synopsis(String description) {
+        if (description == null) return "";
+
+        int end = description.length();
+        for (int i = 3; i < description.length() - 1; i++) {
+            char c = description.charAt(i);
+            if ((c == '.' || c == '!' || c == '?') && description.charAt(i + 1) == ' ' && endsSentence(description, i)) {
+                end = i + 1;
+                break;
+            }
+        }
+
+        if (end <= SYNOPSIS_LENGTH) return description.substring(0, end);
+
+        int space = description.lastIndexOf(' ', SYNOPSIS_LENGTH);
+        String cut = description.substring(0, space > 0 ? space : SYNOPSIS_LENGTH);
+        while (cut.endsWith(",") || cut.endsWith(";") || cut.endsWith(":")) {
+            cut = cut.substring(0, cut.length() - 1);
+        }
+        return cut + "…";
+    }
+
+    // Not the dot of an abbreviation like Dr. or S.H.I.E.L.D., which come after a capital or a short word
+    private static boolean endsSentence(String text, int punctuation) {
+        return Character.isLowerCase(text.charAt(punctuation - 1))
+                && Character.isLetter(text.charAt(punctuation - 2))
+                && Character.isLetter(text.charAt(punctuation - 3));
+    }
+}
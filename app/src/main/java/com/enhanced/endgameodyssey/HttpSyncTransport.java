@@ -0,0 +1,134 @@
+package com.enhanced.endgameodyssey;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exchanges sync batches with a server over HTTP, one POST per batch:
+ * <pre>
+ * request:  { "profile": "Me", "since": 41, "changes": [ { "key": "thor1", "watched": true, "current": false, "updatedAt": 1561000000000 } ] }
+ * response: { "version": 57, "changes": [ ...same shape... ] }
+ * </pre>
+ * The server stores each (profile, key) row with the highest updatedAt it has seen, stamps every row it
+ * stores with a new version and answers with the rows whose version is greater than since.
+ * LocalSyncServer implements the same rules in-process.
+ */
+public class HttpSyncTransport implements SyncTransport {
+
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    private final String url;
+
+    public HttpSyncTransport(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public Response exchange(String profileKey, long since, List<SyncChange> changes) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+
+        try {
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                    new BufferedOutputStream(connection.getOutputStream()), "UTF-8"));
+            writer.beginObject();
+            writer.name("profile").value(profileKey);
+            writer.name("since").value(since);
+            writer.name("changes").beginArray();
+            for (SyncChange change : changes) {
+                writer.beginObject();
+                writer.name("key").value(change.getKey());
+                writer.name("watched").value(change.isWatched());
+                writer.name("current").value(change.isCurrent());
+                writer.name("updatedAt").value(change.getUpdatedAt());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+            writer.close();
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Sync server returned HTTP " + connection.getResponseCode());
+            }
+
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new BufferedInputStream(connection.getInputStream()), "UTF-8"));
+            try {
+                return readResponse(reader);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static Response readResponse(JsonReader reader) throws IOException {
+        long version = -1;
+        List<SyncChange> changes = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("version")) {
+                version = reader.nextLong();
+            } else if (name.equals("changes")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    changes.add(readChange(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (version < 0) {
+            throw new IOException("Sync response has no version");
+        }
+        return new Response(version, changes);
+    }
+
+    private static SyncChange readChange(JsonReader reader) throws IOException {
+        String key = null;
+        boolean watched = false, current = false;
+        long updatedAt = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (name) {
+                case "key": key = reader.nextString(); break;
+                case "watched": watched = reader.nextBoolean(); break;
+                case "current": current = reader.nextBoolean(); break;
+                case "updatedAt": updatedAt = reader.nextLong(); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+
+        // The movie id is resolved from the key when the change is merged
+        return new SyncChange(0, key, watched, current, updatedAt);
+    }
+}
@@ -0,0 +1,53 @@
+package com.enhanced.endgameodyssey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-process stand-in for the sync server, with the same rules as the one HttpSyncTransport talks to.
+ * Hand the same instance to the SyncEngines of two databases to sync them without a network, e.g. in tests.
+ *
+ * Every row it stores gets the next version so a device only ever downloads what changed since its last sync.
+ */
+public class LocalSyncServer implements SyncTransport {
+
+    private static class Row {
+        private SyncChange change;
+        private long version;
+    }
+
+    private final Map<String, Map<String, Row>> profiles = new HashMap<>();
+    private long version;
+
+    @Override
+    public synchronized Response exchange(String profileKey, long since, List<SyncChange> changes) {
+        Map<String, Row> rows = profiles.get(profileKey);
+        if (rows == null) {
+            rows = new HashMap<>();
+            profiles.put(profileKey, rows);
+        }
+
+        // Last writer wins per movie, an older change than the stored one is dropped
+        for (SyncChange change : changes) {
+            Row row = rows.get(change.getKey());
+            if (row == null) {
+                row = new Row();
+                rows.put(change.getKey(), row);
+            } else if (row.change.getUpdatedAt() >= change.getUpdatedAt()) {
+                continue;
+            }
+            row.change = change;
+            row.version = ++version;
+        }
+
+        List<SyncChange> newer = new ArrayList<>();
+        for (Row row : rows.values()) {
+            if (row.version > since) {
+                newer.add(row.change);
+            }
+        }
+        return new Response(version, newer);
+    }
+}
@@ -1,8 +1,20 @@
 package com.enhanced.endgameodyssey;
 
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.net.Uri;
 import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -10,17 +22,31 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBarDrawerToggle;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import androidx.core.os.ConfigurationCompat;
 import androidx.core.view.GravityCompat;
 import androidx.drawerlayout.widget.DrawerLayout;
+import androidx.fragment.app.FragmentManager;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.viewpager.widget.ViewPager;
 
+import com.google.android.material.navigation.NavigationView;
+import com.google.android.material.snackbar.Snackbar;
+import com.google.android.material.tabs.TabLayout;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -40,64 +66,126 @@ import java.util.List;
  * can present or draw them onto the screen. The View does store the data but it observes the LiveData
  * that is stored in the ViewModel for changes.
  *
- * Lastly, for the View, are the MainActivity and MovieDetailsActivity classes.
+ * Lastly, for the View, are the MainActivity and MovieDetailsFragment classes.
  * These are what user interacts with. For the MainActivity, we use the RecyclerView to present the
  * list of movies on the user and sorted them chronologically in the MCU timeline.
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements MovieDetailsFragment.Host {
+
+    public static final int EXPORT_BACKUP_REQUEST = 2;
+    public static final int EXPORT_BACKUP_JSON_REQUEST = 3;
+    public static final int IMPORT_BACKUP_REQUEST = 4;
+    public static final int UPDATE_CATALOG_REQUEST = 5;
+    public static final int INSTALL_POSTERS_REQUEST = 6;
+    public static final int IMPORT_CATALOG_REQUEST = 7;
 
-    public static final int WATCH_MOVIE_REQUEST = 1;
+    private static final String KEY_SCROLL_POSITION = "scroll_position";
+    private static final String KEY_SCROLL_OFFSET = "scroll_offset";
 
+    // About a screen of rows for every tab
+    private static final int PRE_INFLATED_ITEMS = 24;
+
+    // The RecyclerView and LinearLayoutManager of the All tab
+    private RecyclerView recyclerView;
     private LinearLayoutManager linearLayoutManager;
     private MovieViewModel viewModel;
 
+    // Where the list was scrolled to before the Activity was recreated, applied once the first movies
+    // are in the adapter. RecyclerView.NO_POSITION once it has been applied or if there is nothing to restore.
+    private int pendingScrollPosition = RecyclerView.NO_POSITION;
+    private int pendingScrollOffset;
+
     private DrawerLayout drawer;
+    private NavigationView navigationView;
 
     private ProgressBar progressBar;
     private TextView textViewPercent;
     private TextView textViewWatched;
     private TextView textViewDuration;
+    private TextView textViewOutOf;
+
+    // The views of the MovieDetailsFragment, inflated in the background once the list is idle and
+    // handed over when the fragment is created. null until then and after.
+    private MovieDetailsViews preInflatedDetails;
+
+    // The completed runs, newest first, kept up to date for the past runs dialog
+    private List<RunSnapshot> runSnapshots = new ArrayList<>();
+
+    // Kept up to date by the ViewModel as movies are watched, null until the movies have been loaded
+    private SessionPlan sessionPlan;
+
+    // The session lengths the user can pick from, in minutes
+    private static final int[] SESSION_BUDGETS = {90, 120, 180, 240, 360};
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.mark(StartupTrace.MAIN_CREATE);
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Every RecyclerView needs a LayoutManger and so we pass an anonymous instance of LinearLayoutManager
-        // where we pass the Context. The LinearLayoutManager takes care of displaying the vertical stack of movie items.
-        RecyclerView recyclerView = findViewById(R.id.recycler_view);
-
-        linearLayoutManager = new LinearLayoutManager(this);
-        recyclerView.setLayoutManager(linearLayoutManager);
-        // Since we have set the RecyclerView's height and width to match parent which is the MainActivity,
-        // we can then set this true for more efficiency.
-        recyclerView.setHasFixedSize(true);
-
-        // We create the MovieAdapter and set it as the RecyclerView's adapter.
-        final MovieAdapter adapter = new MovieAdapter();
-        // By default the adapter's List of Movies is empty so we have to update it on onChanged callback
-        // of the LiveData observer which is immediately invoked when the movies are retrieved from the ViewModel.
-        recyclerView.setAdapter(adapter);
-
         // We do not call new ViewModel() because that would just create a new instance of ViewModel
         // every time this activity is created. We don't want that, instead, we want to retrieve
         // the same data from the same instance of ViewModel. Instead we ask the Android system for the ViewModel.
         // It knows when it has to create a new ViewModel instance or provide an existing instance.
         viewModel = ViewModelProviders.of(this).get(MovieViewModel.class);
 
+        // A change of the device's language recreates the Activity, the catalog follows it
+        viewModel.useLanguage(ConfigurationCompat.getLocales(getResources().getConfiguration()).get(0));
+
+        // After process death the ViewModel is new, hand it the list that was on screen so it can show it
+        // before the database has been queried. This has to happen before the movies are observed.
+        if (savedInstanceState != null) {
+            viewModel.restoreState(savedInstanceState);
+            pendingScrollPosition = savedInstanceState.getInt(KEY_SCROLL_POSITION, RecyclerView.NO_POSITION);
+            pendingScrollOffset = savedInstanceState.getInt(KEY_SCROLL_OFFSET);
+        }
+
+        // Every tab is a RecyclerView of its own (see createMoviePage()) showing the movies of one MovieFilter.
+        // They all share one pool of rows so switching tabs reuses the rows instead of inflating new ones.
+        MovieItemPool itemPool = new MovieItemPool();
+        RecyclerView[] pages = new RecyclerView[MovieFilter.TABS.length];
+        CharSequence[] titles = new CharSequence[MovieFilter.TABS.length];
+        final List<MovieAdapter> adapters = new ArrayList<>();
+
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = createMoviePage(itemPool);
+            titles[i] = getString(MovieFilter.TAB_TITLES[i]);
+            adapters.add((MovieAdapter) pages[i].getAdapter());
+        }
+
+        // The rows for the first screen of every tab are inflated in the background while the rest of
+        // the Activity is set up. They are inflated for a RecyclerView so they get its LayoutParams.
+        itemPool.preInflate(pages[0], PRE_INFLATED_ITEMS);
+
+        // The All tab is the one that is scrolled back after process death and to the top after a snap
+        recyclerView = pages[0];
+        linearLayoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        final MovieAdapter adapter = adapters.get(0);
+
+        // The thumbnails are decoded once per process, after a rotation the atlas is handed over right away
+        new LoadThumbnailAtlasAsyncTask(this, adapters).execute();
+
         // This observer is attached to the Movies LiveData which is retrieved from the ViewModel
         // and observes/waits/listens for changes in the Movie entity/table in the MovieDatabase
         // which then updates the user interface or RecyclerView's itemViews accordingly.
-        Observer<List<Movie>> observer = new Observer<List<Movie>>() {
+        Observer<MovieList> observer = new Observer<MovieList>() {
 
             // This is only called when this Activity is the foreground (visible) and if this activity
             // is destroyed this will not hold a reference to this activity anymore.
             @Override
-            public void onChanged(List<Movie> movies) {
+            public void onChanged(MovieList movies) {
+                StartupTrace.mark(StartupTrace.FIRST_EMISSION);
 
-                // Submit the list to the adapter and let the ListAdapter class handle the changes and animation
+                // Submit the list to the adapter and let it rebind the rows that changed
                 adapter.submitList(movies);
 
+                // Scroll back to the row that was at the top, with the same part of it showing
+                if (pendingScrollPosition != RecyclerView.NO_POSITION && movies.size() > 0) {
+                    linearLayoutManager.scrollToPositionWithOffset(
+                            Math.min(pendingScrollPosition, movies.size() - 1), pendingScrollOffset);
+                    pendingScrollPosition = RecyclerView.NO_POSITION;
+                }
+
                 // Update the progress tracker each time something is changed
                 updateProgress(movies);
             }
@@ -110,6 +198,156 @@ public class MainActivity extends AppCompatActivity {
         // which can help avoid memory leaks and crashes.
         viewModel.getAllMovies().observe(this, observer);
 
+        // The cold start of the process ends with the first frame of the list
+        if (!StartupTrace.isFinished()) {
+            reportFullyDrawnAfterFirstRows();
+        }
+
+        // The other tabs are observed right away too so their rows are queried in the background
+        // before the user switches to them
+        for (int i = 1; i < pages.length; i++) {
+            final MovieAdapter tabAdapter = adapters.get(i);
+            viewModel.getFilteredMovies(MovieFilter.TABS[i]).observe(this, new Observer<MovieList>() {
+                @Override
+                public void onChanged(MovieList movies) {
+                    tabAdapter.submitList(movies);
+                }
+            });
+        }
+
+        // The ViewPager keeps every page so a tab is laid out once and never again when it is switched to
+        ViewPager viewPager = findViewById(R.id.view_pager);
+        viewPager.setOffscreenPageLimit(pages.length - 1);
+        viewPager.setAdapter(new MovieTabAdapter(pages, titles));
+
+        TabLayout tabLayout = findViewById(R.id.tab_layout);
+        tabLayout.setupWithViewPager(viewPager);
+
+        // Once the list has been drawn and nothing else is going on, inflate the details and read their related
+        // movies in the background so the first tap on a movie only has to bind it
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                preInflateMovieDetails();
+                new LoadRelatedMoviesAsyncTask(MainActivity.this).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                return false;
+            }
+        });
+
+        viewModel.getRunSnapshots().observe(this, new Observer<List<RunSnapshot>>() {
+            @Override
+            public void onChanged(List<RunSnapshot> snapshots) {
+                runSnapshots = snapshots;
+            }
+        });
+
+        viewModel.getSessionPlan().observe(this, new Observer<SessionPlan>() {
+            @Override
+            public void onChanged(SessionPlan plan) {
+                sessionPlan = plan;
+                for (MovieAdapter adapter : adapters) {
+                    adapter.setSessionPlan(plan);
+                }
+            }
+        });
+
+        // Replace default action bar with our custom toolbar
+        Toolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+
+        drawer = findViewById(R.id.draw_layout);
+
+        ActionBarDrawerToggle toggle = new ActionBarDrawerToggle(this, drawer, toolbar,
+                R.string.navigation_drawer_open, R.string.navigation_drawer_close);
+
+        drawer.addDrawerListener(toggle);
+        toggle.syncState();
+
+        progressBar = findViewById(R.id.progress_bar);
+        textViewPercent = findViewById(R.id.text_view_percent);
+        textViewWatched = findViewById(R.id.text_view_watched_count);
+        textViewDuration = findViewById(R.id.text_view_duration);
+        textViewOutOf = findViewById(R.id.text_view_out_of_22);
+
+        // The drawer lists the profiles. Picking one switches every list and the progress to that profile.
+        navigationView = findViewById(R.id.nav_view);
+        navigationView.setNavigationItemSelectedListener(new NavigationView.OnNavigationItemSelectedListener() {
+            @Override
+            public boolean onNavigationItemSelected(@NonNull MenuItem item) {
+                if (item.getItemId() == R.id.nav_add_profile) {
+                    showAddProfileDialog();
+                    return false;
+                }
+
+                // The ids of the profile items are the ids of the profiles
+                viewModel.switchProfile(item.getItemId());
+                drawer.closeDrawer(GravityCompat.START);
+                return true;
+            }
+        });
+
+        viewModel.getAllProfiles().observe(this, new Observer<List<Profile>>() {
+            @Override
+            public void onChanged(List<Profile> profiles) {
+                updateProfileMenu(profiles);
+            }
+        });
+
+        viewModel.getActiveProfileId().observe(this, new Observer<Integer>() {
+            @Override
+            public void onChanged(Integer profileId) {
+                navigationView.setCheckedItem(profileId);
+            }
+        });
+    }
+
+    // Marks the first frame that has rows in the list, then reports the Activity fully drawn once that frame
+    // is on screen and finishes the StartupTrace. A list that is still empty (the database is being seeded) waits.
+    private void reportFullyDrawnAfterFirstRows() {
+        recyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (recyclerView.getChildCount() == 0) return true;
+
+                recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTrace.mark(StartupTrace.FIRST_FRAME);
+
+                // Runs after this frame has been drawn
+                recyclerView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        reportFullyDrawn();
+                        StartupTrace.finish(MainActivity.this);
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    // One tab: a RecyclerView with its own MovieAdapter and LinearLayoutManager but the shared pool of rows
+    private RecyclerView createMoviePage(MovieItemPool itemPool) {
+        RecyclerView page = new RecyclerView(this);
+
+        // Every RecyclerView needs a LayoutManger and so we pass an instance of LinearLayoutManager
+        // where we pass the Context. The LinearLayoutManager takes care of displaying the vertical stack of movie items.
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        // The next rows are bound in the idle time between frames while the list is scrolled. This is on
+        // by default and set here so it stays that way, every tab relies on it to scroll without inflating.
+        layoutManager.setItemPrefetchEnabled(true);
+        // The rows go back to the shared pool when the page is detached, where the other tabs can use them
+        layoutManager.setRecycleChildrenOnDetach(true);
+        page.setLayoutManager(layoutManager);
+        // Since the RecyclerView's height and width match the ViewPager, we can then set this true for more efficiency.
+        page.setHasFixedSize(true);
+        page.setRecycledViewPool(itemPool);
+
+        // We create the MovieAdapter and set it as the RecyclerView's adapter.
+        // By default the adapter's List of Movies is empty so we have to update it on onChanged callback
+        // of the LiveData observer which is immediately invoked when the movies are retrieved from the ViewModel.
+        final MovieAdapter adapter = new MovieAdapter(itemPool);
+        page.setAdapter(adapter);
+
         // Here we attach an ItemTouchHelper to our RecyclerView. We passed an ItemTouchHelper.SimpleCallback with 0
         // as its drag directions to disable dragging, and ItemTouchHelper.LEFT to only support swiping of items to the left.
         new ItemTouchHelper(new ItemTouchHelper.SimpleCallback(0, ItemTouchHelper.LEFT) {
@@ -142,7 +380,7 @@ public class MainActivity extends AppCompatActivity {
             public float getSwipeThreshold(@NonNull RecyclerView.ViewHolder viewHolder) {
                 return 0.25f;
             }
-        }).attachToRecyclerView(recyclerView);
+        }).attachToRecyclerView(page);
 
         // Set the MovieAdapter's OnItemClickListener member variable and pass an anonymous implementation of
         // the OnItemClickListener interface so that the adapter can know what it will do whenever an item is clicked.
@@ -159,62 +397,463 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        // Replace default action bar with our custom toolbar
-        Toolbar toolbar = findViewById(R.id.toolbar);
-        setSupportActionBar(toolbar);
+        return page;
+    }
 
-        drawer = findViewById(R.id.draw_layout);
+    // Saves the list and the scroll position so that after process death the Activity comes back showing
+    // what it showed, without waiting for the database. The catalog itself is cached by the MovieStream.
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        viewModel.saveState(outState);
+
+        int position = pendingScrollPosition;
+        int offset = pendingScrollOffset;
+
+        // Unless the saved position hasn't even been applied yet, save the first visible row and how far
+        // it is scrolled out of view
+        if (position == RecyclerView.NO_POSITION) {
+            position = linearLayoutManager.findFirstVisibleItemPosition();
+            View first = linearLayoutManager.findViewByPosition(position);
+            offset = first != null ? first.getTop() - recyclerView.getPaddingTop() : 0;
+        }
 
-        ActionBarDrawerToggle toggle = new ActionBarDrawerToggle(this, drawer, toolbar,
-                R.string.navigation_drawer_open, R.string.navigation_drawer_close);
+        if (position != RecyclerView.NO_POSITION) {
+            outState.putInt(KEY_SCROLL_POSITION, position);
+            outState.putInt(KEY_SCROLL_OFFSET, offset);
+        }
+    }
 
-        drawer.addDrawerListener(toggle);
-        toggle.syncState();
+    private void updateProfileMenu(List<Profile> profiles) {
+        Menu menu = navigationView.getMenu();
+        menu.removeGroup(R.id.group_profiles);
 
-        progressBar = findViewById(R.id.progress_bar);
-        textViewPercent = findViewById(R.id.text_view_percent);
-        textViewWatched = findViewById(R.id.text_view_watched_count);
-        textViewDuration = findViewById(R.id.text_view_duration);
+        for (Profile profile : profiles) {
+            menu.add(R.id.group_profiles, profile.getId(), Menu.NONE, profile.getName());
+        }
+        menu.setGroupCheckable(R.id.group_profiles, true, true);
+
+        Integer activeProfileId = viewModel.getActiveProfileId().getValue();
+        if (activeProfileId != null && menu.findItem(activeProfileId) != null) {
+            navigationView.setCheckedItem(activeProfileId);
+        }
+    }
+
+    private void showAddProfileDialog() {
+        final EditText editTextName = new EditText(this);
+        editTextName.setHint(R.string.profile_name);
+        editTextName.setSingleLine();
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.add_profile)
+                .setView(editTextName)
+                .setPositiveButton(R.string.create, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        String name = editTextName.getText().toString().trim();
+                        if (!name.isEmpty()) {
+                            viewModel.createProfile(name);
+                            drawer.closeDrawer(GravityCompat.START);
+                        }
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_past_runs:
+                showPastRunsDialog();
+                return true;
+
+            case R.id.action_plan_sessions:
+                showSessionPlanDialog();
+                return true;
+
+            case R.id.action_update_catalog:
+                if (BuildConfig.CATALOG_FEED_URL.isEmpty()) {
+                    Toast.makeText(this, R.string.catalog_update_failed, Toast.LENGTH_SHORT).show();
+                } else {
+                    viewModel.updateCatalog(BuildConfig.CATALOG_FEED_URL, catalogCallback);
+                }
+                return true;
+
+            case R.id.action_update_catalog_file:
+                startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType("application/json"), UPDATE_CATALOG_REQUEST);
+                return true;
+
+            // CSV or JSON, CatalogImporter tells them apart by their content
+            case R.id.action_import_catalog:
+                startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType("*/*"), IMPORT_CATALOG_REQUEST);
+                return true;
+
+            case R.id.action_sync:
+                boolean started = viewModel.sync(new MovieRepository.SyncCallback() {
+                    @Override
+                    public void onSynced(int appliedChanges) {
+                        if (appliedChanges < 0) {
+                            Toast.makeText(MainActivity.this, R.string.sync_failed, Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(MainActivity.this, getString(R.string.synced, appliedChanges), Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+                if (!started) {
+                    Toast.makeText(this, R.string.sync_not_configured, Toast.LENGTH_SHORT).show();
+                }
+                return true;
+
+            case R.id.action_install_posters:
+                startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType("*/*"), INSTALL_POSTERS_REQUEST);
+                return true;
+
+            // The user picks where the backup goes (or comes from) with the Storage Access Framework
+            case R.id.action_export:
+                startActivityForResult(new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType("application/octet-stream")
+                        .putExtra(Intent.EXTRA_TITLE, "endgame-odyssey.backup"), EXPORT_BACKUP_REQUEST);
+                return true;
+
+            case R.id.action_export_json:
+                startActivityForResult(new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType("application/json")
+                        .putExtra(Intent.EXTRA_TITLE, "endgame-odyssey.json"), EXPORT_BACKUP_JSON_REQUEST);
+                return true;
+
+            case R.id.action_import:
+                startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType("*/*"), IMPORT_BACKUP_REQUEST);
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
     }
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
-        // If the button is pressed
-        if (requestCode == WATCH_MOVIE_REQUEST && resultCode == RESULT_OK) {
-
-            int id = data.getIntExtra(MovieDetailsActivity.EXTRA_ID, -1);
-            int timelinePosition = data.getIntExtra(MovieDetailsActivity.EXTRA_TIMELINE_POSITION, -1);
-            boolean isWatched = data.getBooleanExtra(MovieDetailsActivity.EXTRA_WATCHED, false);
-
-            if (id == -1 || timelinePosition == -1) return;
-
-            // If the movie is not yet watched
-            if (!isWatched) {
-                // Set it to watched
-                viewModel.watch(id);
-
-                // Set the next movie as the current movie to watch if not last movie
-                if (timelinePosition < 22) {
-                    viewModel.setAsCurrentMovie(id+1);
-                    Toast.makeText(this, R.string.marked_as_watched, Toast.LENGTH_SHORT).show();
-                } else if (timelinePosition == 22) {
-                    viewModel.unwatchAllMovies();
-                    viewModel.setAsCurrentMovie(1);
-                    linearLayoutManager.scrollToPositionWithOffset(0, 0);
-                    Toast.makeText(this, R.string.snap, Toast.LENGTH_SHORT).show();
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) return;
+
+        if (requestCode == EXPORT_BACKUP_REQUEST || requestCode == EXPORT_BACKUP_JSON_REQUEST) {
+            exportBackup(data.getData(), requestCode == EXPORT_BACKUP_JSON_REQUEST
+                    ? MovieBackup.FORMAT_JSON : MovieBackup.FORMAT_BINARY);
+        } else if (requestCode == IMPORT_BACKUP_REQUEST) {
+            importBackup(data.getData());
+        } else if (requestCode == UPDATE_CATALOG_REQUEST) {
+            updateCatalog(data.getData());
+        } else if (requestCode == IMPORT_CATALOG_REQUEST) {
+            importCatalog(data.getData());
+        } else if (requestCode == INSTALL_POSTERS_REQUEST) {
+            installPosterPack(data.getData());
+        }
+    }
+
+    // Lists every completed run and restores the one that is picked. Restoring is undoable like any watch action.
+    private void showPastRunsDialog() {
+        if (runSnapshots.isEmpty()) {
+            Toast.makeText(this, R.string.no_past_runs, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final List<RunSnapshot> snapshots = runSnapshots;
+        DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
+        String[] items = new String[snapshots.size()];
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            RunSnapshot snapshot = snapshots.get(i);
+            items[i] = getString(R.string.past_run_item, dateFormat.format(new Date(snapshot.getCompletedAt())),
+                    snapshot.getWatchedCount(), snapshot.getMovieCount());
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.past_runs)
+                .setItems(items, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        viewModel.restoreRun(snapshots.get(which).getId());
+                        showUndoSnackbar(R.string.run_restored);
+                    }
+                })
+                .show();
+    }
+
+    // Lists the sessions it takes to watch the rest of the movies, from the first to the last movie of each
+    private void showSessionPlanDialog() {
+        if (sessionPlan == null) return;
+
+        if (sessionPlan.size() == 0) {
+            Toast.makeText(this, R.string.no_sessions_left, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        MovieCatalog catalog = sessionPlan.getMovies().getCatalog();
+        String[] items = new String[sessionPlan.size()];
+
+        for (int i = 0; i < items.length; i++) {
+            String first = catalog.getTitle(sessionPlan.getFirstIndex(i));
+            String time = MovieDetailsFragment.getTimeString(sessionPlan.getMinutes(i));
+
+            items[i] = sessionPlan.getMovieCount(i) == 1
+                    ? getString(R.string.session_item_single, i + 1, first, time)
+                    : getString(R.string.session_item, i + 1, first, catalog.getTitle(sessionPlan.getLastIndex(i)), time);
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle(getString(R.string.plan_sessions_title, items.length,
+                        MovieDetailsFragment.getTimeString(sessionPlan.getBudgetMinutes())))
+                .setItems(items, null)
+                .setNeutralButton(R.string.session_length, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        showSessionBudgetDialog();
+                    }
+                })
+                .show();
+    }
+
+    private void showSessionBudgetDialog() {
+        String[] items = new String[SESSION_BUDGETS.length];
+        int checked = -1;
+
+        for (int i = 0; i < SESSION_BUDGETS.length; i++) {
+            items[i] = MovieDetailsFragment.getTimeString(SESSION_BUDGETS[i]);
+            if (sessionPlan != null && SESSION_BUDGETS[i] == sessionPlan.getBudgetMinutes()) checked = i;
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.session_length)
+                .setSingleChoiceItems(items, checked, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        dialog.dismiss();
+                        viewModel.setSessionBudgetMinutes(SESSION_BUDGETS[which]);
+                        showSessionPlanDialog();
+                    }
+                })
+                .show();
+    }
+
+    private void exportBackup(Uri uri, int format) {
+        OutputStream out;
+        try {
+            out = getContentResolver().openOutputStream(uri);
+        } catch (FileNotFoundException e) {
+            out = null;
+        }
+
+        if (out == null) {
+            Toast.makeText(this, R.string.backup_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        viewModel.exportBackup(out, format, new BackupProgress(R.string.backup_exported, R.string.backup_failed));
+    }
+
+    private void importBackup(Uri uri) {
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            in = null;
+        }
+
+        if (in == null) {
+            Toast.makeText(this, R.string.backup_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        viewModel.importBackup(in, new BackupProgress(R.string.backup_imported, R.string.backup_failed));
+    }
+
+    private void importCatalog(Uri uri) {
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            in = null;
+        }
+
+        if (in == null) {
+            Toast.makeText(this, R.string.catalog_import_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        viewModel.importCatalog(in, new BackupProgress(R.string.catalog_imported, R.string.catalog_import_failed));
+    }
+
+    private void updateCatalog(Uri uri) {
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            in = null;
+        }
+
+        if (in == null) {
+            Toast.makeText(this, R.string.catalog_update_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        viewModel.updateCatalog(in, catalogCallback);
+    }
+
+    private void installPosterPack(Uri uri) {
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            in = null;
+        }
+
+        if (in == null) {
+            Toast.makeText(this, R.string.posters_install_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        viewModel.installPosterPack(in, new MovieRepository.PosterCallback() {
+            @Override
+            public void onPostersInstalled(int posterCount) {
+                if (posterCount < 0) {
+                    Toast.makeText(MainActivity.this, R.string.posters_install_failed, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(MainActivity.this, getString(R.string.posters_installed, posterCount), Toast.LENGTH_SHORT).show();
                 }
+            }
+        });
+    }
+
+    private final MovieRepository.CatalogCallback catalogCallback = new MovieRepository.CatalogCallback() {
+        @Override
+        public void onCatalogUpdated(int changedMovies) {
+            if (changedMovies < 0) {
+                Toast.makeText(MainActivity.this, R.string.catalog_update_failed, Toast.LENGTH_SHORT).show();
+            } else if (changedMovies == 0) {
+                Toast.makeText(MainActivity.this, R.string.catalog_up_to_date, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(MainActivity.this, getString(R.string.catalog_updated, changedMovies), Toast.LENGTH_SHORT).show();
+            }
+        }
+    };
+
+    // This has to be static so it does not have a reference to the MainActivity, the adapters are only weakly referenced.
+    private static class LoadThumbnailAtlasAsyncTask extends AsyncTask<Void, Void, ThumbnailAtlas> {
+
+        private Context context;
+        private List<WeakReference<MovieAdapter>> adapterReferences = new ArrayList<>();
+
+        private LoadThumbnailAtlasAsyncTask(Context context, List<MovieAdapter> adapters) {
+            this.context = context.getApplicationContext();
+            for (MovieAdapter adapter : adapters) {
+                adapterReferences.add(new WeakReference<>(adapter));
+            }
+        }
+
+        @Override
+        protected ThumbnailAtlas doInBackground(Void... voids) {
+            return ThumbnailAtlas.getInstance(context);
+        }
+
+        @Override
+        protected void onPostExecute(ThumbnailAtlas atlas) {
+            if (atlas == null) return;
+
+            for (WeakReference<MovieAdapter> adapterReference : adapterReferences) {
+                MovieAdapter adapter = adapterReference.get();
+                if (adapter != null) {
+                    adapter.setThumbnailAtlas(atlas);
+                }
+            }
+        }
+    }
+
+    // This has to be static so it does not have a reference to the MainActivity otherwise it could cause a memory leak.
+    // Reads the related movies of the details so they are there by the time a movie is opened, on the thread pool so
+    // it doesn't wait behind the thumbnail atlas. The MovieDetailsFragment picks them up with RelatedMovies.peekInstance().
+    private static class LoadRelatedMoviesAsyncTask extends AsyncTask<Void, Void, Void> {
+
+        private Context context;
+
+        private LoadRelatedMoviesAsyncTask(Context context) {
+            this.context = context.getApplicationContext();
+        }
+
+        @Override
+        protected Void doInBackground(Void... voids) {
+            RelatedMovies.getInstance(context);
+            return null;
+        }
+    }
+
+    // Shows the progress of an export or import (of a backup or a catalog) in a Snackbar that stays until it is done
+    private class BackupProgress implements MovieRepository.BackupCallback {
+
+        private final int completedMessageResId;
+        private final int failedMessageResId;
+        private final Snackbar snackbar;
+
+        private BackupProgress(int completedMessageResId, int failedMessageResId) {
+            this.completedMessageResId = completedMessageResId;
+            this.failedMessageResId = failedMessageResId;
+            snackbar = Snackbar.make(findViewById(R.id.fragment_container),
+                    getString(R.string.backup_progress, 0, 0), Snackbar.LENGTH_INDEFINITE);
+            snackbar.show();
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            snackbar.setText(getString(R.string.backup_progress, done, total));
+        }
 
-            // Set the movie as unwatched and as the current movie to watch
+        @Override
+        public void onComplete(boolean success, int rows) {
+            snackbar.dismiss();
+            if (success) {
+                Toast.makeText(MainActivity.this, getString(completedMessageResId, rows), Toast.LENGTH_SHORT).show();
             } else {
-                viewModel.unwatch(id);
-                viewModel.setAsCurrentMovie(id+1);
-                Toast.makeText(this, R.string.marked_as_unwatched, Toast.LENGTH_SHORT).show();
+                Toast.makeText(MainActivity.this, failedMessageResId, Toast.LENGTH_SHORT).show();
             }
         }
     }
 
+    // Every watch action can be undone from the Snackbar, and the undo itself can be redone.
+    private void showUndoSnackbar(int messageResId) {
+        Snackbar.make(findViewById(R.id.fragment_container), messageResId, Snackbar.LENGTH_LONG)
+                .setAction(R.string.undo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        if (viewModel.undo()) {
+                            showRedoSnackbar();
+                        }
+                    }
+                })
+                .show();
+    }
+
+    private void showRedoSnackbar() {
+        Snackbar.make(findViewById(R.id.fragment_container), R.string.undone, Snackbar.LENGTH_LONG)
+                .setAction(R.string.redo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        if (viewModel.redo()) {
+                            showUndoSnackbar(R.string.redone);
+                        }
+                    }
+                })
+                .show();
+    }
+
     @Override
     public void onBackPressed() {
         if (drawer.isDrawerOpen(GravityCompat.START)) {
@@ -224,46 +863,88 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // The details are a fragment on top of the list. It is added the first time, after that it is only shown
+    // and hidden again (by the back button or its watch button) so its views are inflated once.
     private void viewMovieDetails(Movie movie) {
 
         if (movie.isCurrent()) {
-            Intent intent = new Intent(MainActivity.this, MovieDetailsActivity.class);
-
-            intent.putExtra(MovieDetailsActivity.EXTRA_ID, movie.getId());
-            intent.putExtra(MovieDetailsActivity.EXTRA_TITLE, movie.getTitle());
-            intent.putExtra(MovieDetailsActivity.EXTRA_DESCRIPTION, movie.getDescription());
-            intent.putExtra(MovieDetailsActivity.EXTRA_IMAGE_FILENAME, movie.getImageFilename());
-            intent.putExtra(MovieDetailsActivity.EXTRA_RELEASE_DATE, movie.getReleaseDate());
-            intent.putExtra(MovieDetailsActivity.EXTRA_TIMELINE_POSITION, movie.getTimelinePosition());
-            intent.putExtra(MovieDetailsActivity.EXTRA_RATING, movie.getRating());
-            intent.putExtra(MovieDetailsActivity.EXTRA_WATCHED, movie.isWatched());
-            intent.putExtra(MovieDetailsActivity.EXTRA_RUNTIME_MINUTES, movie.getRuntimeMinutes());
-
-            startActivityForResult(intent, WATCH_MOVIE_REQUEST);
+            MovieList movies = viewModel.getAllMovies().getValue();
+            boolean finale = movies != null && movies.getCatalog().getTimeline().isFinale(movie.getTimelinePosition());
+
+            FragmentManager fragmentManager = getSupportFragmentManager();
+            MovieDetailsFragment details = (MovieDetailsFragment) fragmentManager.findFragmentByTag(MovieDetailsFragment.TAG);
+
+            if (details == null) {
+                details = new MovieDetailsFragment();
+                fragmentManager.beginTransaction()
+                        .add(R.id.fragment_container, details, MovieDetailsFragment.TAG)
+                        .hide(details)
+                        .commitNow();
+            }
+
+            details.bind(movie, finale);
+            fragmentManager.beginTransaction()
+                    .show(details)
+                    .addToBackStack(MovieDetailsFragment.TAG)
+                    .commit();
         } else if (!movie.isWatched()) {
             Toast.makeText(MainActivity.this, R.string.locked_movie, Toast.LENGTH_SHORT).show();
         }
     }
 
-    private void updateProgress(List<Movie> movies) {
+    private void preInflateMovieDetails() {
+        // After a rotation the fragment already made its own views
+        if (isFinishing() || getSupportFragmentManager().findFragmentByTag(MovieDetailsFragment.TAG) != null) return;
+
+        MovieDetailsViews.inflateAsync(this, (ViewGroup) findViewById(R.id.fragment_container),
+                new MovieDetailsViews.OnInflatedListener() {
+                    @Override
+                    public void onInflated(MovieDetailsViews views) {
+                        if (getSupportFragmentManager().findFragmentByTag(MovieDetailsFragment.TAG) == null) {
+                            preInflatedDetails = views;
+                        }
+                    }
+                });
+    }
 
-        int watchedCount = 0;
+    @Nullable
+    @Override
+    public MovieDetailsViews takePreInflatedViews() {
+        MovieDetailsViews views = preInflatedDetails;
+        preInflatedDetails = null;
+        return views;
+    }
+
+    // Closes the details the same way the back button does and offers to undo what the button did
+    @Override
+    public void onWatchButtonClicked(int messageResId) {
+        getSupportFragmentManager().popBackStack(MovieDetailsFragment.TAG, FragmentManager.POP_BACK_STACK_INCLUSIVE);
+
+        if (messageResId == R.string.snap) {
+            linearLayoutManager.scrollToPositionWithOffset(0, 0);
+        }
+        showUndoSnackbar(messageResId);
+    }
+
+    private void updateProgress(MovieList movies) {
+
+        MovieCatalog catalog = movies.getCatalog();
+        int watchedCount = movies.getWatchedCount();
         int minutesLeft = 0;
 
-        for (Movie movie : movies) {
-            if (movie.isWatched()) {
-                watchedCount++;
-            } else {
-                minutesLeft += movie.getRuntimeMinutes();
+        for (int i = 0; i < catalog.size(); i++) {
+            if (!movies.isWatched(i)) {
+                minutesLeft += catalog.getRuntimeMinutes(i);
             }
         }
 
-        int percent = (watchedCount * 100) / 22;
-        String timeLeftString = MovieDetailsActivity.getTimeString(minutesLeft);
+        int percent = catalog.size() == 0 ? 0 : (watchedCount * 100) / catalog.size();
+        String timeLeftString = MovieDetailsFragment.getTimeString(minutesLeft);
 
         progressBar.setProgress(percent);
         textViewPercent.setText(getString(R.string.percent, percent));
         textViewWatched.setText(String.valueOf(watchedCount));
+        textViewOutOf.setText(getString(R.string.out_of_movies, catalog.size()));
         textViewDuration.setText(getString(R.string.time_left, timeLeftString));
     }
 }
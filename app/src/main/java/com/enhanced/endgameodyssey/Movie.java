@@ -1,87 +1,33 @@
 package com.enhanced.endgameodyssey;
 
-import androidx.room.Entity;
-import androidx.room.PrimaryKey;
+import androidx.room.Ignore;
 
 /**
- * This is the Movie entity which represents a table in the MovieDatabase.
- * It is a simple class that is annotated with @Entity so that Room will know that this is an entity
- * of the MovieDatabase.
+ * A movie of the catalog as seen by the active profile: the CatalogMovie plus the profile's WatchState of it.
+ * This is what the MovieDAO queries return and what a MovieList materialises when a single movie is needed.
  *
- * We do not set/update any data directly onto the Movie class instances.
- * We update them on the database directly using this entity's Data Access Object,
- * the MovieDAO class.
+ * Movies that the profile has never touched have no WatchState row and come back as neither watched nor current.
  */
-@Entity(tableName = "movie_table")
-public class Movie {
+public class Movie extends CatalogMovie {
 
-    @PrimaryKey(autoGenerate = true)
-    private int id;
-
-    // Constants
-    private String title;
-    private String description;
-    private String imageFilename;
-    private String releaseDate;
-
-    private int runtimeMinutes;
-    private int timelinePosition;
-    private float rating;
-
-    // The only field that can be updated in the database
     private boolean watched;
     private boolean current;
 
-    public Movie(String title, String description, String imageFilename, String releaseDate, int runtimeMinutes, int timelinePosition, float rating, boolean current) {
-        this.title = title;
-        this.description = description;
-        this.releaseDate = releaseDate;
-        this.runtimeMinutes = runtimeMinutes;
-        this.timelinePosition = timelinePosition;
-        this.rating = rating;
-        this.imageFilename = imageFilename;
+    // Used by Room
+    public Movie(String title, String synopsis, byte[] descriptionDeflated, String imageFilename, String releaseDate, int runtimeMinutes, int timelinePosition, float rating, boolean watched, boolean current) {
+        super(title, synopsis, descriptionDeflated, imageFilename, releaseDate, runtimeMinutes, timelinePosition, rating);
+        this.watched = watched;
         this.current = current;
-        this.watched = false;
-    }
-
-    // Setters
-    public void setId(int id) {
-        this.id = id;
     }
 
-    public void setWatched(Boolean watched) {
+    @Ignore
+    public Movie(String title, String description, String imageFilename, String releaseDate, int runtimeMinutes, int timelinePosition, float rating, boolean watched, boolean current) {
+        super(title, description, imageFilename, releaseDate, runtimeMinutes, timelinePosition, rating);
         this.watched = watched;
+        this.current = current;
     }
 
     // Getters
-    public int getId() {
-        return id;
-    }
-
-    public String getTitle() {
-        return title;
-    }
-
-    public String getDescription() {
-        return description;
-    }
-
-    public String getImageFilename() {
-        return imageFilename;
-    }
-
-    public String getReleaseDate() {
-        return releaseDate;
-    }
-
-    public int getTimelinePosition() {
-        return timelinePosition;
-    }
-
-    public float getRating() {
-        return rating;
-    }
-
     public boolean isWatched() {
         return watched;
     }
@@ -89,8 +35,4 @@ public class Movie {
     public boolean isCurrent() {
         return current;
     }
-
-    public int getRuntimeMinutes() {
-        return runtimeMinutes;
-    }
 }
@@ -1,47 +1,130 @@
 package com.enhanced.endgameodyssey;
 
+import android.content.Context;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
-import androidx.recyclerview.widget.DiffUtil;
-import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.text.DateFormat;
+import java.util.BitSet;
+import java.util.Date;
 import java.util.List;
 
 /**
- * This is MovieAdapter class which extends the ListAdapter.
- * We pass the Movie class to set the type of data it will hold and MovieHolder
- * so knows that it knows it is the ViewHolder we want to use.
+ * This is MovieAdapter class which extends the RecyclerView.Adapter.
+ * We pass the MovieHolder so it knows that it is the ViewHolder we want to use.
+ *
+ * It shows a MovieList and reads every row straight out of its MovieCatalog, no Movie objects are
+ * created to draw the list. Because two MovieLists of the same catalog only differ in their bits,
+ * finding the changed rows doesn't need DiffUtil either (see submitList()).
+ *
+ * The tabs of the MainActivity each have a MovieAdapter but share one MovieItemPool, so a MovieHolder may
+ * be bound by another adapter than the one that created it. That's why a holder only ever refers to the
+ * adapter that bound it last.
+ *
+ * Every unwatched row shows how much is left from it to the finale, or when that will be done at one session a
+ * day once the user taps it. The time left comes from a RemainingRuntime kept in step with the MovieList, so a
+ * bind costs O(log n) however large the catalog is, and the sessions from SessionPlan.sessionsFrom().
  */
-public class MovieAdapter extends ListAdapter<Movie, MovieAdapter.MovieHolder> {
+public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieHolder> {
     private OnItemClickListener clickListener;
+    private MovieList movies;
+    private final MovieItemPool itemPool;
 
-    public MovieAdapter() {
-        super(DIFF_CALLBACK);
+    // Rebinds only the time left of a row, which changes whenever a movie after it is watched or unwatched
+    private static final Object PAYLOAD_TIME_LEFT = new Object();
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private RemainingRuntime remainingRuntime;
+
+    // Set by the MainActivity, finishBy switches the rows from the time left to the date
+    private SessionPlan sessionPlan;
+    private boolean finishBy;
+    private DateFormat dateFormat;
+
+    // null until the atlas has been decoded, the rows have no thumbnails until then
+    private ThumbnailAtlas thumbnails;
+
+    public MovieAdapter(MovieItemPool itemPool) {
+        this.itemPool = itemPool;
+
+        // The rows are identified by the movie ids so RecyclerView can animate a catalog change
+        setHasStableIds(true);
     }
 
-    private static final DiffUtil.ItemCallback<Movie> DIFF_CALLBACK = new DiffUtil.ItemCallback<Movie>() {
-        // Check if the data source contains the same items.
-        @Override
-        public boolean areItemsTheSame(@NonNull Movie oldItem, @NonNull Movie newItem) {
-            return oldItem.getId() == newItem.getId();
+    // If only the watch state changed, only the rows whose bits changed are rebound.
+    // A new catalog (an import or a catalog update) is rare enough to just rebind everything.
+    public void submitList(MovieList newMovies) {
+        MovieList oldMovies = movies;
+        movies = newMovies;
+
+        if (oldMovies == null || oldMovies.getCatalog() != newMovies.getCatalog()) {
+            remainingRuntime = new RemainingRuntime(newMovies);
+        } else {
+            remainingRuntime.update(oldMovies, newMovies);
+        }
+
+        // The rows of a filtered tab change with the watch state too, the stable ids keep that cheap
+        if (oldMovies == null || !oldMovies.sameRowsAs(newMovies)) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        BitSet changed = newMovies.changedSince(oldMovies);
+        if (changed.isEmpty()) return;
+
+        // Every row up to the last change has a different time left now
+        int last = newMovies.positionOf(changed.length() - 1);
+        notifyItemRangeChanged(0, last >= 0 ? last : -last - 1, PAYLOAD_TIME_LEFT);
+
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            int position = newMovies.positionOf(i);
+            if (position >= 0) {
+                notifyItemChanged(position);
+            }
         }
+    }
 
-        // Check if the items' individual properties are the same.
-        @Override
-        public boolean areContentsTheSame(@NonNull Movie oldItem, @NonNull Movie newItem) {
-            return oldItem.isWatched() == newItem.isWatched() &&
-                    oldItem.isCurrent() == newItem.isCurrent();
+    // The plan is re-planned after every watch action and every change of the session length
+    public void setSessionPlan(SessionPlan plan) {
+        if (plan == sessionPlan) return;
+
+        sessionPlan = plan;
+        if (finishBy) {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_TIME_LEFT);
         }
-    };
+    }
+
+    // Switches every row between the time left and the day it will be finished by
+    private void toggleFinishBy() {
+        finishBy = !finishBy;
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_TIME_LEFT);
+    }
+
+    public void setThumbnailAtlas(ThumbnailAtlas thumbnails) {
+        this.thumbnails = thumbnails;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+        return movies == null ? 0 : movies.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return movies.getCatalog().getId(movies.indexAt(position));
+    }
 
     // This is where we create and return the MovieHolder that will the hold the items in our RecyclerView.
     // We then set the layout that we want to use for the items in our RecyclerView.
@@ -50,9 +133,12 @@ public class MovieAdapter extends ListAdapter<Movie, MovieAdapter.MovieHolder> {
     @NonNull
     @Override
     public MovieHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        // We create a view using the layout movie_item that we have created.
-        View itemView = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.movie_item, parent, false);
+        // We use a view of the layout movie_item that was inflated ahead of time, or create one if there are none left.
+        View itemView = itemPool.takeInflatedItem();
+        if (itemView == null) {
+            itemView = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.movie_item, parent, false);
+        }
 
         return new MovieHolder(itemView);
     }
@@ -62,19 +148,22 @@ public class MovieAdapter extends ListAdapter<Movie, MovieAdapter.MovieHolder> {
     @Override
     public void onBindViewHolder(@NonNull MovieHolder holder, int position) {
 
-        // getItem() is a ListAdapter method
-        Movie movie = getItem(position);
+        MovieCatalog catalog = movies.getCatalog();
+        int index = movies.indexAt(position);
+        holder.adapter = this;
 
-        holder.textViewTitle.setText(movie.getTitle());
-        holder.textViewDescription.setText(movie.getDescription());
-        holder.textViewPosition.setText(String.valueOf(movie.getTimelinePosition()));
+        holder.textViewTitle.setText(catalog.getTitle(index));
+        holder.textViewDescription.setText(catalog.getSynopsis(index));
+        holder.textViewPosition.setText(String.valueOf(catalog.getTimelinePosition(index)));
+        bindThumbnail(holder, catalog.getImageFilename(index));
+        bindTimeLeft(holder, index);
 
         // If the movie is already watched
-        if (movie.isWatched()) {
+        if (movies.isWatched(index)) {
             holder.itemView.setBackgroundColor(Color.rgb(50, 205, 50)); // lime green
 
         } else {
-            if (movie.isCurrent()) {
+            if (movies.isCurrent(index)) {
                 holder.itemView.setBackgroundColor(Color.rgb(255, 255, 255)); // white
             } else {
                 holder.itemView.setBackgroundColor(Color.rgb(105, 105, 105)); // grey
@@ -82,17 +171,80 @@ public class MovieAdapter extends ListAdapter<Movie, MovieAdapter.MovieHolder> {
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull MovieHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!onlyTimeLeft(payloads)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        holder.adapter = this;
+        bindTimeLeft(holder, movies.indexAt(position));
+    }
+
+    // Whether only the time left has to be rebound, an empty list of payloads means everything
+    private static boolean onlyTimeLeft(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_TIME_LEFT) return false;
+        }
+        return !payloads.isEmpty();
+    }
+
+    // Only the unwatched movies have anything left from them on
+    private void bindTimeLeft(MovieHolder holder, int index) {
+        if (movies.isWatched(index)) {
+            holder.textViewTimeLeft.setVisibility(View.GONE);
+            return;
+        }
+
+        Context context = holder.itemView.getContext();
+        long minutes = remainingRuntime.from(index);
+
+        // The plan comes after the list it was made from, until then a new catalog only shows the time left
+        if (finishBy && sessionPlan != null && sessionPlan.getMovies().getCatalog() == movies.getCatalog()) {
+            if (dateFormat == null) {
+                dateFormat = android.text.format.DateFormat.getMediumDateFormat(context);
+            }
+
+            // A session a day, starting today
+            long days = Math.max(1, sessionPlan.sessionsFrom(index));
+            Date finished = new Date(System.currentTimeMillis() + (days - 1) * DAY_MILLIS);
+            holder.textViewTimeLeft.setText(context.getString(R.string.finish_by, dateFormat.format(finished)));
+        } else {
+            holder.textViewTimeLeft.setText(context.getString(R.string.time_left_from_here, minutes / 60, minutes % 60));
+        }
+        holder.textViewTimeLeft.setVisibility(View.VISIBLE);
+    }
+
+    // The holder's drawable is only moved to another cell of the atlas, nothing is decoded or allocated
+    private void bindThumbnail(MovieHolder holder, String imageFilename) {
+        if (thumbnails != null && holder.thumbnail == null) {
+            holder.thumbnail = new AtlasRegionDrawable(thumbnails);
+            holder.imageViewThumbnail.setImageDrawable(holder.thumbnail);
+        }
+
+        boolean hasThumbnail = holder.thumbnail != null && holder.thumbnail.setImageFilename(imageFilename);
+        holder.imageViewThumbnail.setVisibility(hasThumbnail ? View.VISIBLE : View.GONE);
+    }
+
     public Movie getMovieAt(int position) {
-        return getItem(position);
+        return movies.getMovie(movies.indexAt(position));
     }
 
     // This class will hold the views in the RecyclerView which in this case are the CardViews of movie_item.
     // A ViewHolder describes an item view and metadata about its place within the RecyclerView.
-    class MovieHolder extends RecyclerView.ViewHolder {
+    // This has to be static since the holder can be bound by the adapter of another tab (see MovieItemPool).
+    static class MovieHolder extends RecyclerView.ViewHolder {
 
         private TextView textViewTitle;
         private TextView textViewDescription;
         private TextView textViewPosition;
+        private TextView textViewTimeLeft;
+        private ImageView imageViewThumbnail;
+        private AtlasRegionDrawable thumbnail;
+
+        // The adapter that bound the holder last
+        private MovieAdapter adapter;
 
         // We pass the view which is the CardView that contains the TextViews to the constructor
         // and set the views accordingly. This constructor is called whenever the MovieAdapter's
@@ -104,7 +256,17 @@ public class MovieAdapter extends ListAdapter<Movie, MovieAdapter.MovieHolder> {
             textViewTitle = itemView.findViewById(R.id.text_view_title);
             textViewDescription = itemView.findViewById(R.id.text_view_description);
             textViewPosition = itemView.findViewById(R.id.text_view_position);
+            imageViewThumbnail = itemView.findViewById(R.id.image_view_thumbnail);
+            textViewTimeLeft = itemView.findViewById(R.id.text_view_time_left);
 
+            textViewTimeLeft.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (adapter != null) {
+                        adapter.toggleFinishBy();
+                    }
+                }
+            });
 
             // Set an anonymous View.OnClickListener for the itemView
             itemView.setOnClickListener(new View.OnClickListener() {
@@ -113,12 +275,12 @@ public class MovieAdapter extends ListAdapter<Movie, MovieAdapter.MovieHolder> {
                 public void onClick(View v) {
                     int position = getAdapterPosition();
 
-                    // Make sure that the member variable clickListener is set and that the adapter returns
+                    // Make sure that the adapter's clickListener is set and that the adapter returns
                     // a valid position before calling the clickListener's onItemClick method.
-                    if (clickListener != null && position != RecyclerView.NO_POSITION) {
+                    if (adapter != null && adapter.clickListener != null && position != RecyclerView.NO_POSITION) {
 
                         // Execute the clickListener's onItemClick method which was implemented in the MainActivity
-                        clickListener.onItemClick(getItem(position));
+                        adapter.clickListener.onItemClick(adapter.getMovieAt(position));
                     }
                 }
             });
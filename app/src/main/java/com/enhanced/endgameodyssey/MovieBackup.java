@@ -0,0 +1,391 @@
+package com.enhanced.endgameodyssey;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Writes and reads a backup of the whole catalog and one profile's watch state, one row at a time so that
+ * only a single page of movies is ever in memory no matter how large the catalog is.
+ * <p>
+ * The binary format is a header (MAGIC, VERSION and the number of rows) followed by one length-prefixed
+ * record per movie and a zero length as the terminator. The length prefix lets a newer version append
+ * fields to a record without breaking older readers, they just skip what they don't know.
+ * <p>
+ * The JSON format holds the same fields and is meant for people who want to read or edit their backup.
+ * read() tells the two apart by the first byte so the user doesn't have to pick a format on import.
+ */
+public final class MovieBackup {
+
+    public static final int FORMAT_BINARY = 0;
+    public static final int FORMAT_JSON = 1;
+
+    private static final int MAGIC = 0x45474F42; // "EGOB"
+    private static final int VERSION = 1;
+
+    // How many rows are read from the database, or written into it, at a time
+    private static final int PAGE_SIZE = 500;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Implemented by the AsyncTasks of the MovieRepository so they can publish their progress
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+
+    private MovieBackup() {
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Export
+
+    // Streams every movie, as seen by the profile, from the database into out and returns the number of rows written
+    public static int write(MovieDAO movieDAO, int profileId, OutputStream out, int format, ProgressListener listener) throws IOException {
+        int total = movieDAO.getMovieCount();
+        BufferedOutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+
+        if (format == FORMAT_JSON) {
+            return writeJson(movieDAO, profileId, buffered, total, listener);
+        }
+
+        DataOutputStream data = new DataOutputStream(buffered);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(total);
+
+        // Each record is serialized into this reusable buffer first so we know its length
+        ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(512);
+        DataOutputStream record = new DataOutputStream(recordBuffer);
+
+        int written = 0;
+        List<Movie> page = movieDAO.getMoviesAfter(profileId, 0, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            for (Movie movie : page) {
+                recordBuffer.reset();
+                record.writeInt(movie.getId());
+                record.writeUTF(movie.getTitle());
+                record.writeUTF(movie.getDescription());
+                record.writeUTF(movie.getImageFilename());
+                record.writeUTF(movie.getReleaseDate());
+                record.writeInt(movie.getRuntimeMinutes());
+                record.writeInt(movie.getTimelinePosition());
+                record.writeFloat(movie.getRating());
+                record.writeBoolean(movie.isWatched());
+                record.writeBoolean(movie.isCurrent());
+
+                data.writeInt(recordBuffer.size());
+                recordBuffer.writeTo(data);
+                written++;
+            }
+
+            listener.onProgress(written, total);
+            page = movieDAO.getMoviesAfter(profileId, page.get(page.size() - 1).getId(), PAGE_SIZE);
+        }
+
+        data.writeInt(0);
+        data.flush();
+        return written;
+    }
+
+    private static int writeJson(MovieDAO movieDAO, int profileId, OutputStream out, int total, ProgressListener listener) throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, "UTF-8"));
+        writer.beginObject();
+        writer.name("version").value(VERSION);
+        writer.name("count").value(total);
+        writer.name("movies").beginArray();
+
+        int written = 0;
+        List<Movie> page = movieDAO.getMoviesAfter(profileId, 0, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            for (Movie movie : page) {
+                writer.beginObject();
+                writer.name("id").value(movie.getId());
+                writer.name("title").value(movie.getTitle());
+                writer.name("description").value(movie.getDescription());
+                writer.name("imageFilename").value(movie.getImageFilename());
+                writer.name("releaseDate").value(movie.getReleaseDate());
+                writer.name("runtimeMinutes").value(movie.getRuntimeMinutes());
+                writer.name("timelinePosition").value(movie.getTimelinePosition());
+                writer.name("rating").value(movie.getRating());
+                writer.name("watched").value(movie.isWatched());
+                writer.name("current").value(movie.isCurrent());
+                writer.endObject();
+                written++;
+            }
+
+            listener.onProgress(written, total);
+            page = movieDAO.getMoviesAfter(profileId, page.get(page.size() - 1).getId(), PAGE_SIZE);
+        }
+
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        return written;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Import
+
+    // Replaces the catalog and the profile's watch states with the backup read from in and returns the number
+    // of rows imported. Rows are written PAGE_SIZE at a time, all in one transaction: a backup that turns out to
+    // be cut off or corrupt halfway is rolled back and leaves the catalog and the progress as they were.
+    // The ids in the backup are those of the device that made it, so the movies are matched by their key (the
+    // imageFilename) like in a catalog update: a movie that is already there is updated in place and keeps its
+    // id, and with it the progress of the other profiles. The movies that aren't in the backup are then deleted
+    // together with every profile's states of them, and a profile left without a current movie gets its first
+    // unwatched one.
+    public static int read(MovieDatabase database, int profileId, InputStream in, ProgressListener listener) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+
+        buffered.mark(1);
+        int first = buffered.read();
+        buffered.reset();
+
+        RowSource source = first == '{' ? new JsonRowSource(buffered) : new BinaryRowSource(buffered);
+
+        // Only a page is ever in memory, the rest of the backup waits in the uncommitted transaction
+        database.beginTransaction();
+        try {
+            database.watchStateDAO().deleteStatesOfProfile(profileId);
+
+            // One bit per movie id, the movies of the backup
+            BitSet imported = new BitSet();
+            int rows = readPages(database, profileId, source, imported, listener);
+            deleteOthers(database, imported);
+
+            database.setTransactionSuccessful();
+            return rows;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static int readPages(MovieDatabase database, int profileId, RowSource source, BitSet imported,
+                                 ProgressListener listener) throws IOException {
+        MovieDAO movieDAO = database.movieDAO();
+        int rows = 0;
+        List<Movie> batch = new ArrayList<>(PAGE_SIZE);
+        List<WatchState> states = new ArrayList<>();
+        Movie movie;
+
+        while (true) {
+            movie = source.next();
+            if (movie != null) {
+                // The id is the one of the device the backup was made on
+                movie.setId(0);
+                batch.add(movie);
+            }
+
+            if (batch.size() == PAGE_SIZE || (movie == null && !batch.isEmpty())) {
+                long[] rowIds = movieDAO.insertNew(new ArrayList<CatalogMovie>(batch));
+
+                for (int i = 0; i < batch.size(); i++) {
+                    Movie row = batch.get(i);
+                    int id;
+                    if (rowIds[i] != -1) {
+                        id = (int) rowIds[i];
+                    } else {
+                        movieDAO.updateCatalogEntry(row.getImageFilename(), row.getTitle(), row.getSynopsis(),
+                                row.getDescriptionDeflated(), row.getReleaseDate(), row.getRuntimeMinutes(),
+                                row.getTimelinePosition(), row.getRating());
+                        id = movieDAO.getIdByKey(row.getImageFilename());
+                    }
+                    imported.set(id);
+
+                    // Movies without a WatchState row are neither watched nor current
+                    if (row.isWatched() || row.isCurrent()) {
+                        states.add(new WatchState(profileId, id, row.isWatched(), row.isCurrent()));
+                    }
+                }
+                database.watchStateDAO().setStates(states);
+
+                rows += batch.size();
+                batch.clear();
+                states.clear();
+                listener.onProgress(rows, Math.max(rows, source.getTotal()));
+            }
+
+            if (movie == null) return rows;
+        }
+    }
+
+    // Deletes the movies that aren't in the backup and every profile's states of them, a page of ids at a time
+    private static void deleteOthers(MovieDatabase database, BitSet imported) {
+        MovieDAO movieDAO = database.movieDAO();
+        WatchStateDAO watchStateDAO = database.watchStateDAO();
+
+        List<Integer> ids = movieDAO.getIdsAfter(0, PAGE_SIZE);
+        while (!ids.isEmpty()) {
+            for (int id : ids) {
+                if (!imported.get(id)) {
+                    watchStateDAO.deleteStatesOfMovie(id);
+                    movieDAO.deleteById(id);
+                }
+            }
+            ids = movieDAO.getIdsAfter(ids.get(ids.size() - 1), PAGE_SIZE);
+        }
+
+        // If a profile's current movie was deleted, its first unwatched movie takes its place
+        for (int profileId : database.profileDAO().getProfileIds()) {
+            if (watchStateDAO.getCurrentMovieCount(profileId) == 0) {
+                Integer firstUnwatchedId = watchStateDAO.getFirstUnwatchedMovieId(profileId);
+                if (firstUnwatchedId != null) {
+                    watchStateDAO.setState(new WatchState(profileId, firstUnwatchedId, false, true));
+                }
+            }
+        }
+    }
+
+    // Creates a Movie the same way Room does when it reads one from the MovieDAO
+    private static Movie newMovie(int id, String title, String description, String imageFilename, String releaseDate,
+                                  int runtimeMinutes, int timelinePosition, float rating, boolean watched, boolean current) {
+        Movie movie = new Movie(title, description, imageFilename, releaseDate, runtimeMinutes, timelinePosition, rating, watched, current);
+        movie.setId(id);
+        return movie;
+    }
+
+    // Reads one movie at a time from a backup, returns null once there are no more
+    private interface RowSource {
+        Movie next() throws IOException;
+
+        // The number of rows the header says there are, 0 if it hasn't been read (yet)
+        int getTotal();
+    }
+
+    private static class BinaryRowSource implements RowSource {
+
+        private DataInputStream data;
+        private int total;
+
+        private BinaryRowSource(InputStream in) throws IOException {
+            data = new DataInputStream(in);
+
+            if (data.readInt() != MAGIC) {
+                throw new IOException("Not an Endgame Odyssey backup");
+            }
+            if (data.readInt() > VERSION) {
+                throw new IOException("Backup was made by a newer version of the app");
+            }
+            total = data.readInt();
+        }
+
+        @Override
+        public Movie next() throws IOException {
+            int length;
+            try {
+                length = data.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (length == 0) return null;
+
+            byte[] bytes = new byte[length];
+            data.readFully(bytes);
+
+            // Fields added by newer versions are after the ones we know and are simply ignored
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+            return newMovie(record.readInt(), record.readUTF(), record.readUTF(), record.readUTF(), record.readUTF(),
+                    record.readInt(), record.readInt(), record.readFloat(), record.readBoolean(), record.readBoolean());
+        }
+
+        @Override
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    private static class JsonRowSource implements RowSource {
+
+        private JsonReader reader;
+        private int total;
+        private boolean inMovies;
+        private boolean finished;
+
+        private JsonRowSource(InputStream in) throws IOException {
+            reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+            reader.beginObject();
+        }
+
+        @Override
+        public Movie next() throws IOException {
+            if (finished) return null;
+
+            // Skip over the header fields until we reach the movies array
+            while (!inMovies) {
+                if (!reader.hasNext()) {
+                    finished = true;
+                    return null;
+                }
+
+                String name = reader.nextName();
+                if (name.equals("count")) {
+                    total = reader.nextInt();
+                } else if (name.equals("movies")) {
+                    reader.beginArray();
+                    inMovies = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            if (!reader.hasNext()) {
+                reader.endArray();
+                finished = true;
+                return null;
+            }
+
+            int id = 0, runtimeMinutes = 0, timelinePosition = 0;
+            String title = null, description = null, imageFilename = null, releaseDate = null;
+            float rating = 0;
+            boolean watched = false, current = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                switch (name) {
+                    case "id": id = reader.nextInt(); break;
+                    case "title": title = reader.nextString(); break;
+                    case "description": description = reader.nextString(); break;
+                    case "imageFilename": imageFilename = reader.nextString(); break;
+                    case "releaseDate": releaseDate = reader.nextString(); break;
+                    case "runtimeMinutes": runtimeMinutes = reader.nextInt(); break;
+                    case "timelinePosition": timelinePosition = reader.nextInt(); break;
+                    case "rating": rating = (float) reader.nextDouble(); break;
+                    case "watched": watched = reader.nextBoolean(); break;
+                    case "current": current = reader.nextBoolean(); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+
+            return newMovie(id, title, description, imageFilename, releaseDate, runtimeMinutes, timelinePosition,
+                    rating, watched, current);
+        }
+
+        @Override
+        public int getTotal() {
+            return total;
+        }
+    }
+}
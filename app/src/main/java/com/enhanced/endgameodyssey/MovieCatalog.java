@@ -0,0 +1,337 @@
+package com.enhanced.endgameodyssey;
+
+import android.database.Cursor;
+import android.util.LruCache;
+import android.util.SparseIntArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The whole catalog in timeline order, packed into a handful of arrays instead of one object per movie.
+ * <p>
+ * It is immutable and loaded only when the movie_table changes, so every MovieList of every profile
+ * shares the same instance and an emission of the movie list doesn't copy a single string.
+ * <ul>
+ *     <li>The numbers are kept in primitive arrays, one per column.</li>
+ *     <li>Titles, filenames and release dates are pooled while loading so repeated values
+ *     (many movies came out on the same day) are one String.</li>
+ *     <li>The synopses the list shows are packed as UTF-8 into one byte array with an offset per movie.
+ *     That is half the size of Java's UTF-16 Strings for English text and saves a String object per movie;
+ *     the few that are on screen are decoded when they are bound.</li>
+ *     <li>The full descriptions, by far the largest column, stay deflated as they are stored (see
+ *     DescriptionCodec) and are packed the same way. One is only inflated when the details of its movie are
+ *     opened, the last few are kept in a small LRU.</li>
+ * </ul>
+ * Every catalog has a key computed from its content. A MovieList saved across process death only remembers
+ * that key and its bits, and the catalog is read back from the file written by writeTo() if the keys match.
+ * <p>
+ * Packed this way a catalog takes well under half the heap of the same movies as Movie objects, around
+ * 15 MB for 50,000 movies with descriptions of a couple of hundred characters.
+ */
+public final class MovieCatalog {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x45474F43; // "EGOC"
+
+    // Enough for the details being opened and closed for the same few movies
+    private static final int INFLATED_DESCRIPTIONS = 8;
+
+    private final int size;
+    private final int[] ids;
+    private final String[] titles;
+    private final String[] imageFilenames;
+    private final String[] releaseDates;
+    private final int[] runtimeMinutes;
+    private final int[] timelinePositions;
+    private final float[] ratings;
+
+    // The synopsis of the movie at index i is synopses[synopsisOffsets[i]..synopsisOffsets[i+1]), its
+    // deflated description is descriptions[descriptionOffsets[i]..descriptionOffsets[i+1])
+    private final byte[] synopses;
+    private final int[] synopsisOffsets;
+    private final byte[] descriptions;
+    private final int[] descriptionOffsets;
+
+    // The descriptions that were inflated last, by index
+    private final LruCache<Integer, String> inflatedDescriptions = new LruCache<>(INFLATED_DESCRIPTIONS);
+
+    // Movie id to index, a binary search over two int arrays without boxing
+    private final SparseIntArray indexById;
+
+    // imageFilename to index, only built if a movie is ever looked up by its key (see indexOfKey())
+    private Map<String, Integer> indexByKey;
+
+    private final long key;
+
+    // The watch order of the catalog, see Timeline
+    private final Timeline timeline;
+
+    private MovieCatalog(int[] ids, String[] titles, String[] imageFilenames, String[] releaseDates,
+                         int[] runtimeMinutes, int[] timelinePositions, float[] ratings,
+                         byte[] synopses, int[] synopsisOffsets, byte[] descriptions, int[] descriptionOffsets) {
+        this.size = ids.length;
+        this.ids = ids;
+        this.titles = titles;
+        this.imageFilenames = imageFilenames;
+        this.releaseDates = releaseDates;
+        this.runtimeMinutes = runtimeMinutes;
+        this.timelinePositions = timelinePositions;
+        this.ratings = ratings;
+        this.synopses = synopses;
+        this.synopsisOffsets = synopsisOffsets;
+        this.descriptions = descriptions;
+        this.descriptionOffsets = descriptionOffsets;
+
+        indexById = new SparseIntArray(size);
+        for (int i = 0; i < size; i++) {
+            indexById.put(ids[i], i);
+        }
+
+        // Only has to tell catalogs apart, not resist anyone trying to collide it
+        long key = Arrays.hashCode(ids);
+        key = key * 31 + Arrays.hashCode(titles);
+        key = key * 31 + Arrays.hashCode(imageFilenames);
+        key = key * 31 + Arrays.hashCode(releaseDates);
+        key = key * 31 + Arrays.hashCode(runtimeMinutes);
+        key = key * 31 + Arrays.hashCode(timelinePositions);
+        key = key * 31 + Arrays.hashCode(ratings);
+        key = key * 31 + Arrays.hashCode(synopses);
+        key = key * 31 + Arrays.hashCode(descriptions);
+        this.key = key;
+
+        timeline = new Timeline(ids, timelinePositions);
+    }
+
+    // Reads every row of the cursor (see MovieDAO.getCatalogCursor()) straight into the arrays
+    // without creating a CatalogMovie for each of them, and closes it.
+    public static MovieCatalog load(Cursor cursor) {
+        try {
+            int size = cursor.getCount();
+            int[] ids = new int[size];
+            String[] titles = new String[size];
+            String[] imageFilenames = new String[size];
+            String[] releaseDates = new String[size];
+            int[] runtimeMinutes = new int[size];
+            int[] timelinePositions = new int[size];
+            float[] ratings = new float[size];
+            int[] synopsisOffsets = new int[size + 1];
+            int[] descriptionOffsets = new int[size + 1];
+
+            int idColumn = cursor.getColumnIndexOrThrow("id");
+            int titleColumn = cursor.getColumnIndexOrThrow("title");
+            int synopsisColumn = cursor.getColumnIndexOrThrow("synopsis");
+            int descriptionColumn = cursor.getColumnIndexOrThrow("descriptionDeflated");
+            int imageFilenameColumn = cursor.getColumnIndexOrThrow("imageFilename");
+            int releaseDateColumn = cursor.getColumnIndexOrThrow("releaseDate");
+            int runtimeMinutesColumn = cursor.getColumnIndexOrThrow("runtimeMinutes");
+            int timelinePositionColumn = cursor.getColumnIndexOrThrow("timelinePosition");
+            int ratingColumn = cursor.getColumnIndexOrThrow("rating");
+
+            Map<String, String> pool = new HashMap<>();
+            ByteArrayOutputStream synopses = new ByteArrayOutputStream(size * 96);
+            ByteArrayOutputStream descriptions = new ByteArrayOutputStream(size * 128);
+
+            for (int i = 0; i < size && cursor.moveToNext(); i++) {
+                ids[i] = cursor.getInt(idColumn);
+                titles[i] = pooled(pool, cursor.getString(titleColumn));
+                imageFilenames[i] = pooled(pool, cursor.getString(imageFilenameColumn));
+                releaseDates[i] = pooled(pool, cursor.getString(releaseDateColumn));
+                runtimeMinutes[i] = cursor.getInt(runtimeMinutesColumn);
+                timelinePositions[i] = cursor.getInt(timelinePositionColumn);
+                ratings[i] = cursor.getFloat(ratingColumn);
+
+                byte[] synopsis = cursor.isNull(synopsisColumn)
+                        ? new byte[0] : cursor.getString(synopsisColumn).getBytes(UTF_8);
+                synopses.write(synopsis, 0, synopsis.length);
+                synopsisOffsets[i + 1] = synopses.size();
+
+                // Copied as it is stored, nothing is inflated while loading
+                byte[] description = cursor.isNull(descriptionColumn) ? new byte[0] : cursor.getBlob(descriptionColumn);
+                descriptions.write(description, 0, description.length);
+                descriptionOffsets[i + 1] = descriptions.size();
+            }
+
+            return new MovieCatalog(ids, titles, imageFilenames, releaseDates, runtimeMinutes, timelinePositions,
+                    ratings, synopses.toByteArray(), synopsisOffsets, descriptions.toByteArray(), descriptionOffsets);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Writes the catalog in a form readFrom() reads back without touching the database
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        data.writeInt(MAGIC);
+        data.writeInt(MovieDatabase.VERSION);
+        data.writeLong(key);
+        data.writeInt(size);
+
+        for (int i = 0; i < size; i++) {
+            data.writeInt(ids[i]);
+            writeNullableUTF(data, titles[i]);
+            writeNullableUTF(data, imageFilenames[i]);
+            writeNullableUTF(data, releaseDates[i]);
+            data.writeInt(runtimeMinutes[i]);
+            data.writeInt(timelinePositions[i]);
+            data.writeFloat(ratings[i]);
+            data.writeInt(synopsisOffsets[i + 1]);
+            data.writeInt(descriptionOffsets[i + 1]);
+        }
+
+        data.writeInt(synopses.length);
+        data.write(synopses);
+        data.writeInt(descriptions.length);
+        data.write(descriptions);
+        data.flush();
+    }
+
+    // Reads a catalog written by writeTo(), null if it isn't the catalog with the given key
+    // or was written for another version of the database.
+    public static MovieCatalog readFrom(InputStream in, long expectedKey) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        if (data.readInt() != MAGIC || data.readInt() != MovieDatabase.VERSION || data.readLong() != expectedKey) {
+            return null;
+        }
+
+        int size = data.readInt();
+        int[] ids = new int[size];
+        String[] titles = new String[size];
+        String[] imageFilenames = new String[size];
+        String[] releaseDates = new String[size];
+        int[] runtimeMinutes = new int[size];
+        int[] timelinePositions = new int[size];
+        float[] ratings = new float[size];
+        int[] synopsisOffsets = new int[size + 1];
+        int[] descriptionOffsets = new int[size + 1];
+        Map<String, String> pool = new HashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            ids[i] = data.readInt();
+            titles[i] = pooled(pool, readNullableUTF(data));
+            imageFilenames[i] = pooled(pool, readNullableUTF(data));
+            releaseDates[i] = pooled(pool, readNullableUTF(data));
+            runtimeMinutes[i] = data.readInt();
+            timelinePositions[i] = data.readInt();
+            ratings[i] = data.readFloat();
+            synopsisOffsets[i + 1] = data.readInt();
+            descriptionOffsets[i + 1] = data.readInt();
+        }
+
+        byte[] synopses = new byte[data.readInt()];
+        data.readFully(synopses);
+        byte[] descriptions = new byte[data.readInt()];
+        data.readFully(descriptions);
+
+        MovieCatalog catalog = new MovieCatalog(ids, titles, imageFilenames, releaseDates, runtimeMinutes,
+                timelinePositions, ratings, synopses, synopsisOffsets, descriptions, descriptionOffsets);
+        return catalog.key == expectedKey ? catalog : null;
+    }
+
+    private static void writeNullableUTF(DataOutputStream data, String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) data.writeUTF(value);
+    }
+
+    private static String readNullableUTF(DataInputStream data) throws IOException {
+        return data.readBoolean() ? data.readUTF() : null;
+    }
+
+    private static String pooled(Map<String, String> pool, String value) {
+        if (value == null) return null;
+
+        String shared = pool.get(value);
+        if (shared == null) {
+            pool.put(value, value);
+            shared = value;
+        }
+        return shared;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    // The index of the movie with the given id, -1 if it isn't in the catalog
+    public int indexOf(int id) {
+        return indexById.get(id, -1);
+    }
+
+    // The index of the movie with the given imageFilename, -1 if it isn't in the catalog
+    public synchronized int indexOfKey(String imageFilename) {
+        if (indexByKey == null) {
+            indexByKey = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                indexByKey.put(imageFilenames[i], i);
+            }
+        }
+
+        Integer index = indexByKey.get(imageFilename);
+        return index != null ? index : -1;
+    }
+
+    // Getters, all by index in timeline order
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public String getTitle(int index) {
+        return titles[index];
+    }
+
+    // Decodes a new String every time, only call it for what is about to be shown
+    public String getSynopsis(int index) {
+        int offset = synopsisOffsets[index];
+        return new String(synopses, offset, synopsisOffsets[index + 1] - offset, UTF_8);
+    }
+
+    // Inflates the full description unless it was one of the last few, only call it for the details
+    public String getDescription(int index) {
+        String description = inflatedDescriptions.get(index);
+        if (description == null) {
+            int offset = descriptionOffsets[index];
+            description = DescriptionCodec.inflate(descriptions, offset, descriptionOffsets[index + 1] - offset);
+            inflatedDescriptions.put(index, description);
+        }
+        return description;
+    }
+
+    public String getImageFilename(int index) {
+        return imageFilenames[index];
+    }
+
+    public String getReleaseDate(int index) {
+        return releaseDates[index];
+    }
+
+    public int getRuntimeMinutes(int index) {
+        return runtimeMinutes[index];
+    }
+
+    public int getTimelinePosition(int index) {
+        return timelinePositions[index];
+    }
+
+    public float getRating(int index) {
+        return ratings[index];
+    }
+}
@@ -1,41 +1,84 @@
 package com.enhanced.endgameodyssey;
 
-import androidx.lifecycle.LiveData;
+import android.database.Cursor;
+
 import androidx.room.Dao;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 
 import java.util.List;
 
 /**
- * This is the Data Access Object or DAO interface for the Movie entity.
+ * This is the Data Access Object or DAO interface for the CatalogMovie entity.
  * It is responsible for directly manipulating the movies in the database.
  * This is used by the MovieRepository class which provides the data to the ViewModel.
+ *
+ * The queries that return a Movie join the catalog with the WatchState of one profile.
+ * The watch state itself is changed through the WatchStateDAO.
  */
 @Dao
 public interface MovieDAO {
 
+    // Every column of the catalog plus the profile's watched and current flags. A movie without a
+    // WatchState row for the profile is neither watched nor current.
+    String SELECT_MOVIES = "SELECT m.*, COALESCE(s.watched, 0) AS watched, COALESCE(s.current, 0) AS current " +
+            "FROM movie_table m LEFT JOIN watch_state_table s ON s.movieId = m.id AND s.profileId = :profileId";
+
     @Insert
-    void insert(Movie movie);
+    void insert(CatalogMovie movie);
+
+    // Bulk insert used when importing a catalog or a backup (see CatalogImporter and MovieBackup). Returns -1
+    // for a movie whose key is already in the table, the importer updates that one instead so it keeps its id.
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long[] insertNew(List<CatalogMovie> movies);
+
+    @Query("SELECT COUNT(*) FROM movie_table")
+    int getMovieCount();
+
+    // One page of movies ordered by id, starting after afterId. Paging on the primary key instead of
+    // using OFFSET means every page is a single index seek however deep into the table we are.
+    @Query(SELECT_MOVIES + " WHERE m.id > :afterId ORDER BY m.id ASC LIMIT :limit")
+    List<Movie> getMoviesAfter(int profileId, int afterId, int limit);
 
-    // Set watched to false, and set current to true
-    @Query("UPDATE movie_table SET watched=0, current=1 WHERE id=:id")
-    void unwatch(int id);
+    // One page of the ids of the movies, like getMoviesAfter() but without reading the movies
+    @Query("SELECT id FROM movie_table WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<Integer> getIdsAfter(int afterId, int limit);
 
-    // Set watched to true and current to false
-    @Query("UPDATE movie_table SET watched=1, current=0 WHERE id=:id")
-    void watch(int id);
+    // The id of the movie with the given catalog key (its imageFilename), null if there is none
+    @Query("SELECT id FROM movie_table WHERE imageFilename=:key")
+    Integer getIdByKey(String key);
 
-    // Set current to true, this is usually called after calling watch
-    @Query("UPDATE movie_table SET watched=0, current=1 WHERE id=:id")
-    void setAsCurrentMovie(int id);
+    // Updates the catalog columns of a movie, the profiles' WatchStates live in their own table
+    // The description is passed encoded, see DescriptionCodec.
+    @Query("UPDATE movie_table SET title=:title, synopsis=:synopsis, descriptionDeflated=:descriptionDeflated, " +
+            "releaseDate=:releaseDate, runtimeMinutes=:runtimeMinutes, timelinePosition=:timelinePosition, rating=:rating " +
+            "WHERE imageFilename=:key")
+    void updateCatalogEntry(String key, String title, String synopsis, byte[] descriptionDeflated, String releaseDate,
+                            int runtimeMinutes, int timelinePosition, float rating);
 
-    // Reset all of the movies to not watched.
-    @Query("UPDATE movie_table SET watched=0")
-    void unwatchAllMovies();
+    // Replaces the text of a movie with that of another language (see CatalogText), returns 0 if there is no such movie
+    @Query("UPDATE movie_table SET title=:title, synopsis=:synopsis, descriptionDeflated=:descriptionDeflated " +
+            "WHERE imageFilename=:key")
+    int updateText(String key, String title, String synopsis, byte[] descriptionDeflated);
 
-    // Get all movies sorted sorted by chronological order in the MCU timeline and return
-    // them as LiveData of List of Movies
+    @Query("DELETE FROM movie_table WHERE imageFilename=:key")
+    void deleteByKey(String key);
+
+    @Query("DELETE FROM movie_table WHERE id=:id")
+    void deleteById(int id);
+
+    // The first movie of the timeline, the current movie of a new profile
+    @Query("SELECT id FROM movie_table ORDER BY timelinePosition ASC LIMIT 1")
+    Integer getFirstMovieId();
+
+    // Get the whole catalog sorted by chronological order in the MCU timeline. The MovieCatalog reads
+    // the cursor straight into its arrays, which is why this isn't a List of CatalogMovies.
     @Query("SELECT * FROM movie_table ORDER BY timelinePosition ASC")
-    LiveData<List<Movie>> getAllMovies();
+    Cursor getCatalogCursor();
+
+    // The ids of the movies released in the given years, for the tabs of the phases (see MovieFilter).
+    // The releaseDate is stored as text like "May 02, 2008" so the year is its last four characters.
+    @Query("SELECT id FROM movie_table WHERE CAST(substr(releaseDate, -4) AS INTEGER) BETWEEN :fromYear AND :toYear")
+    Cursor getIdsReleasedBetween(int fromYear, int toYear);
 }
@@ -10,13 +10,20 @@ import androidx.room.RoomDatabase;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
 /**
  * This is the singleton MovieDatabase abstract class that Room will subclass.
  * <p>
  * A Room database can have multiple entities (tables) with each entity having its own corresponding
- * Data Access Object, therefore a Room database can have multiple DAO's but since we only have one
- * entity (Movie), we only have one Data Access Object in this class-- MovieDAO.
+ * Data Access Object, therefore a Room database can have multiple DAO's. Besides the CatalogMovie entity and its
+ * MovieDAO, we have the profiles (Profile) and their watch states (WatchState) with their ProfileDAO and
+ * WatchStateDAO, the append-only watch history (WatchEvent and WatchSummary) and its WatchHistoryDAO, and the
+ * snapshots of completed runs (RunSnapshot) and its RunSnapshotDAO.
  * <p>
  * This class doesn't have a MovieDAO member variable. We can access the Movie's DAO using the abstract method movieDAO()
  * which we'll call using the database's single instance. But since this class is an abstract class, we cannot create
@@ -25,10 +32,26 @@ import java.util.Locale;
  * <p>
  * We can now then get a single instance of MovieDatabase using the getInstance() synchronized method and then
  * access the method movieDAO from it.
+ * <p>
+ * The database is opened with write-ahead logging, so reads never wait for writes: the MovieStream, the LiveData
+ * queries and the widget's refresh each get a reader connection of their own and see the last committed state
+ * while a transaction is still writing. Writes still go one at a time, and they all go through the WRITER so they
+ * queue up in a known order instead of in SQLite's busy handler.
  */
-@Database(entities = Movie.class, version = 5)
+@Database(entities = {CatalogMovie.class, WatchState.class, Profile.class, WatchEvent.class, WatchSummary.class,
+        RunSnapshot.class}, version = MovieDatabase.VERSION)
 public abstract class MovieDatabase extends RoomDatabase {
 
+    // Also written into the files that cache database content (see MovieCatalog.writeTo()) so they are
+    // never trusted after the database has been upgraded or recreated
+    public static final int VERSION = 11;
+
+    // Every write to the database runs on this one thread, in the order it was asked for, so nothing slow that
+    // isn't a write is done here: downloads, catalog imports and exports run on a thread of their own and only
+    // hand their transactions to it (see runOnWriter()). The only read queued here is the widget's progress,
+    // right behind the write it has to see.
+    public static final Executor WRITER = Executors.newSingleThreadExecutor();
+
     private static MovieDatabase instance; // Singleton
     private static Context mContext;
 
@@ -36,16 +59,27 @@ public abstract class MovieDatabase extends RoomDatabase {
     // is instantiated using MovieDatabase.getInstance() and be able to get the MovieDAO
     public abstract MovieDAO movieDAO();
 
+    // Same as movieDAO() but for the per-profile watch states
+    public abstract WatchStateDAO watchStateDAO();
+
+    // Same as movieDAO() but for the profiles
+    public abstract ProfileDAO profileDAO();
+
+    // Same as movieDAO() but for the watch history tables
+    public abstract WatchHistoryDAO watchHistoryDAO();
+
+    // Same as movieDAO() but for the snapshots of completed runs
+    public abstract RunSnapshotDAO runSnapshotDAO();
+
     // This builds an instance of MovieDatabase if none exists, then returns it.
     // It is synchronized to prevent creation of multiple instances.
     public static synchronized MovieDatabase getInstance(Context context) {
         if (instance == null) {
             mContext = context;
-            instance = Room.databaseBuilder(
+            instance = configure(context, Room.databaseBuilder(
                     context.getApplicationContext(), // Application context
                     MovieDatabase.class, // Database class
-                    "movie_database") // Database name
-                    .fallbackToDestructiveMigration() // Recreate database from scratch whenever version is incremented
+                    "movie_database")) // Database name
                     .addCallback(roomCallback) // Add an onCreate callback
                     .build();
         }
@@ -53,6 +87,31 @@ public abstract class MovieDatabase extends RoomDatabase {
         return instance;
     }
 
+    // Runs write on the WRITER after everything asked for before it and waits for it to finish. Must be called on
+    // a background thread other than the WRITER, which would wait for itself.
+    public static <T> T runOnWriter(Callable<T> write) {
+        FutureTask<T> task = new FutureTask<>(write);
+        WRITER.execute(task);
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the WRITER", e);
+        }
+    }
+
+    // The configuration of the database, shared with the MovieDatabaseStressTest so that it measures the same thing
+    static Builder<MovieDatabase> configure(Context context, Builder<MovieDatabase> builder) {
+        return builder
+                .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING) // Not left to Room, which turns it off on low-RAM devices
+                .addMigrations(MovieMigrations.all(context.getString(R.string.default_profile_name))) // Keep the progress on upgrades
+                .fallbackToDestructiveMigrationFrom(1, 2, 3, 4); // Only the versions from before the first release are recreated
+    }
+
     // A callback that is added to Room's database builder that populates the database upon creation only.
     // This must be executed on the background thread (asynchronously) since Room doesn't allow execution of
     // database operations on the main thread which could freeze the app and can cause it to crash.
@@ -60,7 +119,14 @@ public abstract class MovieDatabase extends RoomDatabase {
         @Override
         public void onCreate(@NonNull SupportSQLiteDatabase db) {
             super.onCreate(db);
-            new PopulateDBAsyncTask(instance).execute();
+            new PopulateDBAsyncTask(instance).executeOnExecutor(WRITER);
+        }
+
+        // Room opens the database lazily, on the thread of the first query
+        @Override
+        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+            super.onOpen(db);
+            StartupTrace.mark(StartupTrace.DB_OPEN);
         }
     };
 
@@ -71,276 +137,268 @@ public abstract class MovieDatabase extends RoomDatabase {
         // We don't have a movieDAO member variable in MovieDatabase class (see MovieDatabase class javadocs comment)
         // that's why we'll get it from the database's instance passed onto this class's constructor.
         private MovieDAO movieDAO;
+        private ProfileDAO profileDAO;
+        private WatchStateDAO watchStateDAO;
 
         // Constructor
         private PopulateDBAsyncTask(MovieDatabase db) {
             // We are allowed to call MovieDatabase.movieDAO() here since this constructor is called only
             // after the database is created or instantiated.
             movieDAO = db.movieDAO();
+            profileDAO = db.profileDAO();
+            watchStateDAO = db.watchStateDAO();
         }
 
-        // Invoked using the execute() method.
+        // Invoked using the executeOnExecutor() method.
         @Override
         protected Void doInBackground(Void... voids) {
             try {
                 insertMovies(movieDAO);
+                insertDefaultProfile(profileDAO, watchStateDAO, movieDAO);
             } catch (Exception e) {
                 e.printStackTrace();
             }
             return null;
         }
 
+        // The default profile starts with the first movie of the timeline as its current movie.
+        private static void insertDefaultProfile(ProfileDAO profileDAO, WatchStateDAO watchStateDAO, MovieDAO movieDAO) {
+            Profile profile = new Profile(mContext.getString(R.string.default_profile_name));
+            profile.setId(Profile.DEFAULT_PROFILE_ID);
+            profileDAO.insert(profile);
+
+            watchStateDAO.setState(new WatchState(Profile.DEFAULT_PROFILE_ID, movieDAO.getFirstMovieId(), false, true));
+        }
+
         // This is pretty much self-explanatory otherwise re-enroll to Dean Mitch's OOP.
         private static void insertMovies(MovieDAO movieDAO) throws Exception {
 
             // Create a Locale for the SimpleDateFormat's constructor with arguments of language and country.
             Locale locale = new Locale("en", "ph");
 
-            // new Movie(String title, String description, String imageFilename, Date releasedAt, int timelinePosition, float rating)
+            // new CatalogMovie(String title, String description, String imageFilename, Date releasedAt, int timelinePosition, float rating)
 
             // TODO: Research on XML parser for the movies strings.
 
             // Captain America: The First Avenger
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.captain_america1_title),
                     mContext.getString(R.string.captain_america1_description),
                     mContext.getString(R.string.captain_america1_image_filename),
                     mContext.getString(R.string.captain_america1_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.captain_america1_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.captain_america1_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.captain_america1_rating)),
-                    true));
+                    Float.parseFloat(mContext.getString(R.string.captain_america1_rating))));
 
             // Captain Marvel
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.captain_marvel_title),
                     mContext.getString(R.string.captain_marvel_description),
                     mContext.getString(R.string.captain_marvel_image_filename),
                     mContext.getString(R.string.captain_marvel_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.captain_marvel_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.captain_marvel_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.captain_marvel_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.captain_marvel_rating))));
 
             // Iron Man
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.iron_man1_title),
                     mContext.getString(R.string.iron_man1_description),
                     mContext.getString(R.string.iron_man1_image_filename),
                     mContext.getString(R.string.iron_man1_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.iron_man1_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.iron_man1_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.iron_man1_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.iron_man1_rating))));
 
             // Iron Man 2
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.iron_man2_title),
                     mContext.getString(R.string.iron_man2_description),
                     mContext.getString(R.string.iron_man2_image_filename),
                     mContext.getString(R.string.iron_man2_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.iron_man2_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.iron_man2_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.iron_man2_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.iron_man2_rating))));
 
             // The Incredible Hulk
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.hulk_title),
                     mContext.getString(R.string.hulk_description),
                     mContext.getString(R.string.hulk_image_filename),
                     mContext.getString(R.string.hulk_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.hulk_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.hulk_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.hulk_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.hulk_rating))));
 
             // Thor
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.thor1_title),
                     mContext.getString(R.string.thor1_description),
                     mContext.getString(R.string.thor1_image_filename),
                     mContext.getString(R.string.thor1_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.thor1_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.thor1_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.thor1_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.thor1_rating))));
 
             // The Avengers
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.avengers1_title),
                     mContext.getString(R.string.avengers1_description),
                     mContext.getString(R.string.avengers1_image_filename),
                     mContext.getString(R.string.avengers1_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.avengers1_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.avengers1_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.avengers1_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.avengers1_rating))));
 
             // Iron Man 3
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.iron_man3_title),
                     mContext.getString(R.string.iron_man3_description),
                     mContext.getString(R.string.iron_man3_image_filename),
                     mContext.getString(R.string.iron_man3_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.iron_man3_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.iron_man3_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.iron_man3_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.iron_man3_rating))));
 
             // Thor: The Dark World
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.thor2_title),
                     mContext.getString(R.string.thor2_description),
                     mContext.getString(R.string.thor2_image_filename),
                     mContext.getString(R.string.thor2_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.thor2_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.thor2_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.thor2_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.thor2_rating))));
 
             // Captain America: The Winter Soldier
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.captain_america2_title),
                     mContext.getString(R.string.captain_america2_description),
                     mContext.getString(R.string.captain_america2_image_filename),
                     mContext.getString(R.string.captain_america2_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.captain_america2_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.captain_america2_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.captain_america2_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.captain_america2_rating))));
 
             // Guardians of the Galaxy
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.guardians1_title),
                     mContext.getString(R.string.guardians1_description),
                     mContext.getString(R.string.guardians1_image_filename),
                     mContext.getString(R.string.guardians1_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.guardians1_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.guardians1_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.guardians1_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.guardians1_rating))));
 
             // Guardians of the Galaxy Vol. 2
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.guardians2_title),
                     mContext.getString(R.string.guardians2_description),
                     mContext.getString(R.string.guardians2_image_filename),
                     mContext.getString(R.string.guardians2_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.guardians2_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.guardians2_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.guardians2_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.guardians2_rating))));
 
             // Avengers: Age of Ultron
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.avengers2_title),
                     mContext.getString(R.string.avengers2_description),
                     mContext.getString(R.string.avengers2_image_filename),
                     mContext.getString(R.string.avengers2_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.avengers2_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.avengers2_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.avengers2_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.avengers2_rating))));
 
             // Ant-Man
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.ant_man1_title),
                     mContext.getString(R.string.ant_man1_description),
                     mContext.getString(R.string.ant_man1_image_filename),
                     mContext.getString(R.string.ant_man1_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.ant_man1_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.ant_man1_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.ant_man1_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.ant_man1_rating))));
 
             // Captain America: Civil War
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.captain_america3_title),
                     mContext.getString(R.string.captain_america3_description),
                     mContext.getString(R.string.captain_america3_image_filename),
                     mContext.getString(R.string.captain_america3_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.captain_america3_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.captain_america3_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.captain_america3_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.captain_america3_rating))));
 
             // Black Panther
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.black_panther_title),
                     mContext.getString(R.string.black_panther_description),
                     mContext.getString(R.string.black_panther_image_filename),
                     mContext.getString(R.string.black_panther_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.black_panther_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.black_panther_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.black_panther_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.black_panther_rating))));
 
             // Spider-Man: Homecoming
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.spider_man_title),
                     mContext.getString(R.string.spider_man_description),
                     mContext.getString(R.string.spider_man_image_filename),
                     mContext.getString(R.string.spider_man_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.spider_man_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.spider_man_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.spider_man_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.spider_man_rating))));
 
             // Doctor Strange
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.doctor_strange_title),
                     mContext.getString(R.string.doctor_strange_description),
                     mContext.getString(R.string.doctor_strange_image_filename),
                     mContext.getString(R.string.doctor_strange_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.doctor_strange_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.doctor_strange_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.doctor_strange_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.doctor_strange_rating))));
 
             // Thor: Ragnarok
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.thor3_title),
                     mContext.getString(R.string.thor3_description),
                     mContext.getString(R.string.thor3_image_filename),
                     mContext.getString(R.string.thor3_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.thor3_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.thor3_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.thor3_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.thor3_rating))));
 
             // Ant-Man and the Wasp
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.ant_man2_title),
                     mContext.getString(R.string.ant_man2_description),
                     mContext.getString(R.string.ant_man2_image_filename),
                     mContext.getString(R.string.ant_man2_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.ant_man2_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.ant_man2_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.ant_man2_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.ant_man2_rating))));
 
             // Avengers: Infinity War
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.avengers3_title),
                     mContext.getString(R.string.avengers3_description),
                     mContext.getString(R.string.avengers3_image_filename),
                     mContext.getString(R.string.avengers3_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.avengers3_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.avengers3_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.avengers3_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.avengers3_rating))));
 
             // Avengers: Endgame
-            movieDAO.insert(new Movie(
+            movieDAO.insert(new CatalogMovie(
                     mContext.getString(R.string.avengers4_title),
                     mContext.getString(R.string.avengers4_description),
                     mContext.getString(R.string.avengers4_image_filename),
                     mContext.getString(R.string.avengers4_releasedAt),
                     Integer.parseInt(mContext.getString(R.string.avengers4_durationMinutes)),
                     Integer.parseInt(mContext.getString(R.string.avengers4_timelinePosition)),
-                    Float.parseFloat(mContext.getString(R.string.avengers4_rating)),
-                    false));
+                    Float.parseFloat(mContext.getString(R.string.avengers4_rating))));
         }
     }
 }
@@ -0,0 +1,278 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProviders;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+/**
+ * Shows the details of the current movie on top of the list in the MainActivity's fragment_container.
+ *
+ * The MainActivity adds this fragment the first time a movie is opened and after that only shows and
+ * hides it, so its views are inflated once and every other open is just a fragment transaction that
+ * binds another movie (see bind()). The watch button talks to the same MovieViewModel as the MainActivity
+ * instead of sending a result back through an Intent.
+ *
+ * Even that one inflation is usually done ahead of time: the views come pre-inflated from the Host (see
+ * MovieDetailsViews). How long it took from the tap to the first frame of the details is logged every time.
+ *
+ * Below the movie is a strip of related titles from the RelatedMovies index built with the app, tapping
+ * one shows that movie instead. Only the current movie can be watched (see MainActivity.viewMovieDetails()),
+ * any other movie is shown without the watch button.
+ */
+public class MovieDetailsFragment extends Fragment {
+
+    public static final String TAG = "movie_details";
+
+    private static final String LOG_TAG = "MovieDetailsFragment";
+
+    private static final String ARG_ID = "id";
+    private static final String ARG_DESCRIPTION = "description";
+    private static final String ARG_IMAGE_FILENAME = "image_filename";
+    private static final String ARG_RELEASE_DATE = "release_date";
+    private static final String ARG_TIMELINE_POSITION = "timeline_position";
+    private static final String ARG_RATING = "rating";
+    private static final String ARG_WATCHED = "watched";
+    private static final String ARG_CURRENT = "current";
+    private static final String ARG_RUNTIME_MINUTES = "runtime_minutes";
+    private static final String ARG_FINALE = "finale";
+
+    // Implemented by the MainActivity
+    public interface Host {
+
+        // The views inflated ahead of time, null if there are none (yet)
+        @Nullable
+        MovieDetailsViews takePreInflatedViews();
+
+        // Closes the details and offers to undo what the button did
+        void onWatchButtonClicked(int messageResId);
+    }
+
+    private MovieDetailsViews views;
+
+    private MovieViewModel viewModel;
+    private Host host;
+
+    // The imageFilenames of the related movies of the movie that is shown, reused for every movie
+    private String[] relatedKeys;
+
+    // The movie that is shown, kept in a Bundle so it survives with the fragment's saved state
+    private Bundle movie;
+
+    // When the movie was bound, right after the tap, 0 once its first frame has been logged
+    private long boundAt;
+
+    private final ViewTreeObserver.OnPreDrawListener firstFrameListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            views.root.getViewTreeObserver().removeOnPreDrawListener(this);
+            if (boundAt != 0) {
+                Log.d(LOG_TAG, "First frame " + (SystemClock.uptimeMillis() - boundAt) + " ms after the tap");
+                boundAt = 0;
+            }
+            return true;
+        }
+    };
+
+    @Override
+    public void onAttach(@NonNull Context context) {
+        super.onAttach(context);
+        host = (Host) context;
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        host = null;
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // The same instance the MainActivity uses since they both ask for the one of the Activity
+        viewModel = ViewModelProviders.of(requireActivity()).get(MovieViewModel.class);
+
+        if (savedInstanceState != null) {
+            movie = savedInstanceState.getBundle(TAG);
+        }
+    }
+
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+        Trace.beginSection("MovieDetailsFragment.onCreateView");
+
+        // Only inflated here if the pre-inflated views haven't arrived yet, e.g. after a rotation
+        views = host != null ? host.takePreInflatedViews() : null;
+        if (views == null) {
+            views = new MovieDetailsViews(inflater.inflate(R.layout.fragment_movie_details, container, false));
+        }
+
+        views.imageViewWatchButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                updateMovie();
+            }
+        });
+
+        if (movie != null) {
+            showMovie();
+        }
+
+        Trace.endSection();
+        return views.root;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        views = null;
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBundle(TAG, movie);
+    }
+
+    // Shows the movie in the views that are already there, finale tells whether watching it snaps the run
+    public void bind(Movie movie, boolean finale) {
+        Bundle args = new Bundle();
+        args.putInt(ARG_ID, movie.getId());
+        args.putString(ARG_DESCRIPTION, movie.getDescription());
+        args.putString(ARG_IMAGE_FILENAME, movie.getImageFilename());
+        args.putString(ARG_RELEASE_DATE, movie.getReleaseDate());
+        args.putInt(ARG_TIMELINE_POSITION, movie.getTimelinePosition());
+        args.putFloat(ARG_RATING, movie.getRating());
+        args.putBoolean(ARG_WATCHED, movie.isWatched());
+        args.putBoolean(ARG_CURRENT, movie.isCurrent());
+        args.putInt(ARG_RUNTIME_MINUTES, movie.getRuntimeMinutes());
+        args.putBoolean(ARG_FINALE, finale);
+        this.movie = args;
+
+        boundAt = SystemClock.uptimeMillis();
+
+        // The first time the views only exist once the fragment has been added, onCreateView() shows the movie
+        if (views != null) {
+            showMovie();
+        }
+    }
+
+    private void showMovie() {
+        // Watching the finale snaps the run. A related movie that isn't the current one can only be looked at,
+        // watching it would leave the run with two current movies or unwatch one in the middle of it.
+        views.imageViewWatchButton.setImageResource(movie.getBoolean(ARG_FINALE)
+                ? R.drawable.infinity_gauntlet : R.drawable.green_button);
+        // The label is part of the button, it goes with it
+        int watchVisibility = movie.getBoolean(ARG_CURRENT) ? View.VISIBLE : View.GONE;
+        views.imageViewWatchButton.setVisibility(watchVisibility);
+        views.textViewWatched.setVisibility(watchVisibility);
+
+        // Set the data provided by the MainActivity
+        loadImage(movie.getString(ARG_IMAGE_FILENAME), views.imageViewPoster);
+        views.textViewDescription.setText(movie.getString(ARG_DESCRIPTION));
+        views.textViewReleaseDate.setText(movie.getString(ARG_RELEASE_DATE));
+        views.textViewRating.setText(Float.toString(movie.getFloat(ARG_RATING)));
+
+        String timeString = getTimeString(movie.getInt(ARG_RUNTIME_MINUTES));
+
+        views.textViewRuntime.setText("Runtime: " + timeString);
+
+        showRelatedMovies(movie.getString(ARG_IMAGE_FILENAME));
+
+        if (boundAt != 0) {
+            views.root.getViewTreeObserver().removeOnPreDrawListener(firstFrameListener);
+            views.root.getViewTreeObserver().addOnPreDrawListener(firstFrameListener);
+        }
+    }
+
+    // Only the related movies that are in the catalog on screen are shown, the strip is hidden if there are none
+    private void showRelatedMovies(String imageFilename) {
+        RelatedMovies related = RelatedMovies.peekInstance();
+        final MovieList movies = viewModel.getAllMovies().getValue();
+        int count = 0;
+
+        if (related != null && movies != null) {
+            if (relatedKeys == null) {
+                relatedKeys = new String[related.getMaxRelated()];
+            }
+
+            final MovieCatalog catalog = movies.getCatalog();
+            int found = related.findRelated(imageFilename, relatedKeys);
+
+            for (int i = 0; i < found; i++) {
+                final int index = catalog.indexOfKey(relatedKeys[i]);
+                if (index < 0) continue;
+
+                TextView item = relatedItem(count++);
+                item.setText(catalog.getTitle(index));
+                item.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        bind(movies.getMovie(index), catalog.getTimeline().isFinale(catalog.getTimelinePosition(index)));
+                    }
+                });
+            }
+        }
+
+        for (int i = count; i < views.layoutRelated.getChildCount(); i++) {
+            views.layoutRelated.getChildAt(i).setVisibility(View.GONE);
+        }
+        views.relatedStrip.setVisibility(count > 0 ? View.VISIBLE : View.GONE);
+        views.relatedStrip.scrollTo(0, 0);
+    }
+
+    // The item at position in the strip, inflated the first time so the strip only ever grows to the most related movies
+    private TextView relatedItem(int position) {
+        TextView item;
+        if (position < views.layoutRelated.getChildCount()) {
+            item = (TextView) views.layoutRelated.getChildAt(position);
+        } else {
+            item = (TextView) LayoutInflater.from(requireContext())
+                    .inflate(R.layout.related_movie_item, views.layoutRelated, false);
+            views.layoutRelated.addView(item);
+        }
+        item.setVisibility(View.VISIBLE);
+        return item;
+    }
+
+    // The poster comes from an installed poster pack or else from the drawable resources (see PosterStore)
+    private void loadImage(String imageName, ImageView imageView){
+        PosterStore.getInstance(requireContext()).load(imageName, imageView);
+    }
+
+    // Watches or unwatches the movie through the ViewModel and lets the MainActivity close the details
+    private void updateMovie() {
+        if (movie == null || host == null || !movie.getBoolean(ARG_CURRENT)) return;
+
+        int messageResId = viewModel.toggleWatched(movie.getInt(ARG_ID), movie.getInt(ARG_TIMELINE_POSITION),
+                movie.getBoolean(ARG_WATCHED));
+
+        // A second tap before the details are gone mustn't toggle the movie back
+        movie = null;
+
+        if (messageResId != 0) {
+            host.onWatchButtonClicked(messageResId);
+        }
+    }
+
+    public static String getTimeString(int time) {
+        String hours = String.valueOf(time/60);
+        String minutes = String.valueOf(time%60);
+        String str = hours + " hours and " + minutes + " minutes";
+
+        return str;
+    }
+}
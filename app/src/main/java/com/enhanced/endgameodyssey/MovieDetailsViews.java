@@ -0,0 +1,68 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+
+/**
+ * The views of fragment_movie_details, looked up once when the layout is inflated so binding a movie is
+ * only setting them, the same thing a generated view binding class would be.
+ * <p>
+ * inflateAsync() inflates the layout on a background thread. The MainActivity does that once its list is
+ * idle and keeps the result until the MovieDetailsFragment is created, so opening the first movie doesn't
+ * inflate anything on the main thread.
+ */
+public class MovieDetailsViews {
+
+    public interface OnInflatedListener {
+        void onInflated(MovieDetailsViews views);
+    }
+
+    final View root;
+
+    final ImageView imageViewPoster;
+    final TextView textViewDescription;
+    final TextView textViewReleaseDate;
+    final TextView textViewRating;
+    final TextView textViewRuntime;
+
+    final View relatedStrip;
+    final LinearLayout layoutRelated;
+
+    final ImageView imageViewWatchButton;
+    final TextView textViewWatched;
+
+    public MovieDetailsViews(View root) {
+        this.root = root;
+
+        imageViewPoster = root.findViewById(R.id.image_view_movie_details_poster);
+        textViewDescription = root.findViewById(R.id.text_view_movie_details_description);
+        textViewReleaseDate = root.findViewById(R.id.text_view_movie_details_release_date);
+        textViewRating = root.findViewById(R.id.text_view_movie_details_rating);
+        textViewRuntime = root.findViewById(R.id.text_view_runtime);
+
+        relatedStrip = root.findViewById(R.id.scroll_view_related);
+        layoutRelated = root.findViewById(R.id.layout_related);
+
+        imageViewWatchButton = root.findViewById(R.id.image_view_watched);
+        textViewWatched = root.findViewById(R.id.text_view_watched);
+    }
+
+    // Inflates the layout for the parent the fragment will be added to, the listener is called on the main thread
+    public static void inflateAsync(Context context, ViewGroup parent, final OnInflatedListener listener) {
+        new AsyncLayoutInflater(context).inflate(R.layout.fragment_movie_details, parent,
+                new AsyncLayoutInflater.OnInflateFinishedListener() {
+                    @Override
+                    public void onInflateFinished(@NonNull View view, int resid, @Nullable ViewGroup parent) {
+                        listener.onInflated(new MovieDetailsViews(view));
+                    }
+                });
+    }
+}
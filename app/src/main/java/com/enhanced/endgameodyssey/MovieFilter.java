@@ -0,0 +1,78 @@
+package com.enhanced.endgameodyssey;
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * The tabs of the MainActivity, each one a filter over the movies of the active profile.
+ * <p>
+ * A filter is a query for the ids of its movies (see MovieDAO and WatchStateDAO), run by the tab's MovieStream
+ * on its background thread right after the profile's MovieList was loaded. The ids are turned into the
+ * catalog indices of the rows the tab shows, so a filtered MovieList still shares the catalog and the bits
+ * of the unfiltered one.
+ * <p>
+ * The phases aren't in the catalog, they are told apart by the year the movie was released in.
+ */
+public final class MovieFilter {
+
+    public static final int ALL = 0;
+    public static final int UNWATCHED = 1;
+    public static final int WATCHED = 2;
+    public static final int PHASE_1 = 3;
+    public static final int PHASE_2 = 4;
+    public static final int PHASE_3 = 5;
+
+    // The filters in the order of their tabs and the titles of the tabs
+    public static final int[] TABS = {ALL, UNWATCHED, WATCHED, PHASE_1, PHASE_2, PHASE_3};
+    public static final int[] TAB_TITLES = {R.string.tab_all, R.string.tab_unwatched, R.string.tab_watched,
+            R.string.tab_phase_1, R.string.tab_phase_2, R.string.tab_phase_3};
+
+    // The release years of the phases, inclusive
+    private static final int[][] PHASE_YEARS = {{0, 2012}, {2013, 2015}, {2016, 9999}};
+
+    private MovieFilter() {
+    }
+
+    // Returns the movies the filter lets through. Must be called on a background thread.
+    public static MovieList apply(MovieDatabase database, int profileId, int filter, MovieList movies) {
+        switch (filter) {
+            case UNWATCHED:
+            case WATCHED:
+                return movies.withRows(toRows(movies.getCatalog(),
+                        database.watchStateDAO().getMovieIdsByWatched(profileId, filter == WATCHED)));
+
+            case PHASE_1:
+            case PHASE_2:
+            case PHASE_3:
+                int[] years = PHASE_YEARS[filter - PHASE_1];
+                return movies.withRows(toRows(movies.getCatalog(),
+                        database.movieDAO().getIdsReleasedBetween(years[0], years[1])));
+
+            default:
+                return movies;
+        }
+    }
+
+    // The catalog indices of the ids in the cursor, in timeline order
+    private static int[] toRows(MovieCatalog catalog, Cursor cursor) {
+        int[] rows = new int[cursor.getCount()];
+        int count = 0;
+
+        try {
+            while (cursor.moveToNext()) {
+                // A movie added to the catalog after it was loaded shows up with the next query
+                int index = catalog.indexOf(cursor.getInt(0));
+                if (index >= 0) {
+                    rows[count++] = index;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        rows = Arrays.copyOf(rows, count);
+        Arrays.sort(rows);
+        return rows;
+    }
+}
@@ -0,0 +1,53 @@
+package com.enhanced.endgameodyssey;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayDeque;
+
+/**
+ * The RecycledViewPool shared by the RecyclerViews of every tab of the MainActivity.
+ * <p>
+ * All the tabs show the same movie_item rows, so a row scrolled out of one tab can be bound in another
+ * instead of each tab inflating its own. On top of that the rows the tabs need for their first screen
+ * are inflated ahead of time on a background thread by preInflate(), and the MovieAdapter takes those
+ * before it inflates one itself. Opening the Activity or switching to a tab then inflates (almost) nothing
+ * on the main thread.
+ */
+public class MovieItemPool extends RecyclerView.RecycledViewPool {
+
+    // Enough for every tab to have a screen's worth of rows scrolled out of view
+    private static final int MAX_RECYCLED_ITEMS = 30;
+
+    private final ArrayDeque<View> inflatedItems = new ArrayDeque<>();
+
+    public MovieItemPool() {
+        setMaxRecycledViews(0, MAX_RECYCLED_ITEMS);
+    }
+
+    // Inflates count rows for the RecyclerView parent in the background, they arrive on the main thread
+    public void preInflate(ViewGroup parent, int count) {
+        AsyncLayoutInflater inflater = new AsyncLayoutInflater(parent.getContext());
+        AsyncLayoutInflater.OnInflateFinishedListener listener = new AsyncLayoutInflater.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(@NonNull View view, int resid, @Nullable ViewGroup parent) {
+                inflatedItems.add(view);
+            }
+        };
+
+        for (int i = 0; i < count; i++) {
+            inflater.inflate(R.layout.movie_item, parent, listener);
+        }
+    }
+
+    // A row inflated by preInflate(), null if they have all been taken (or haven't arrived yet)
+    @Nullable
+    public View takeInflatedItem() {
+        return inflatedItems.poll();
+    }
+}
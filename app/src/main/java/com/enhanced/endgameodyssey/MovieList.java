@@ -0,0 +1,113 @@
+package com.enhanced.endgameodyssey;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable snapshot of the movies as seen by one profile, what the MovieStream emits and the MovieAdapter shows.
+ * <p>
+ * It doesn't copy the catalog, it references the shared MovieCatalog and only adds two bits per movie,
+ * watched and current, indexed like the catalog. A new snapshot after a watch action therefore costs two
+ * small BitSets, and finding the rows that changed between two snapshots is an XOR of them.
+ * <p>
+ * A filtered list (a tab other than All, see MovieFilter) shares all of that and only adds the catalog
+ * indices of its rows. Positions are what the MovieAdapter shows, indices are what the catalog and the
+ * bits are indexed by, indexAt() maps the one to the other.
+ */
+public final class MovieList {
+
+    private final MovieCatalog catalog;
+    private final BitSet watched;
+    private final BitSet current;
+    private final int watchedCount;
+
+    // The sorted catalog indices of the rows, null if every movie of the catalog is a row
+    private final int[] rows;
+
+    // The BitSets are owned by the new MovieList from here on, nobody else may change them
+    public MovieList(MovieCatalog catalog, BitSet watched, BitSet current) {
+        this(catalog, watched, current, watched.cardinality(), null);
+    }
+
+    private MovieList(MovieCatalog catalog, BitSet watched, BitSet current, int watchedCount, int[] rows) {
+        this.catalog = catalog;
+        this.watched = watched;
+        this.current = current;
+        this.watchedCount = watchedCount;
+        this.rows = rows;
+    }
+
+    // The same movies with only the given rows (sorted catalog indices) showing, the bits are shared
+    public MovieList withRows(int[] rows) {
+        return new MovieList(catalog, watched, current, watchedCount, rows);
+    }
+
+    // The bits as bytes, small enough to go into a saved instance state even for a large catalog
+    public byte[] getWatchedBits() {
+        return watched.toByteArray();
+    }
+
+    public byte[] getCurrentBits() {
+        return current.toByteArray();
+    }
+
+    public boolean sameAs(MovieList other) {
+        return sameRowsAs(other) && watched.equals(other.watched) && current.equals(other.current);
+    }
+
+    public boolean sameRowsAs(MovieList other) {
+        return catalog == other.catalog && Arrays.equals(rows, other.rows);
+    }
+
+    // The indices whose watched or current bit differs from the other snapshot of the same catalog
+    public BitSet changedSince(MovieList other) {
+        BitSet changed = (BitSet) watched.clone();
+        changed.xor(other.watched);
+
+        BitSet changedCurrent = (BitSet) current.clone();
+        changedCurrent.xor(other.current);
+        changed.or(changedCurrent);
+        return changed;
+    }
+
+    public MovieCatalog getCatalog() {
+        return catalog;
+    }
+
+    // The number of rows
+    public int size() {
+        return rows == null ? catalog.size() : rows.length;
+    }
+
+    // The catalog index of the row at position
+    public int indexAt(int position) {
+        return rows == null ? position : rows[position];
+    }
+
+    // The position of the row with the catalog index, negative if the movie isn't one of the rows
+    public int positionOf(int index) {
+        return rows == null ? index : Arrays.binarySearch(rows, index);
+    }
+
+    // Of the whole catalog, not only of the rows
+    public int getWatchedCount() {
+        return watchedCount;
+    }
+
+    public boolean isWatched(int index) {
+        return watched.get(index);
+    }
+
+    public boolean isCurrent(int index) {
+        return current.get(index);
+    }
+
+    // Materialises the movie at index, for the few places that need one (e.g. opening its details)
+    public Movie getMovie(int index) {
+        Movie movie = new Movie(catalog.getTitle(index), catalog.getDescription(index), catalog.getImageFilename(index),
+                catalog.getReleaseDate(index), catalog.getRuntimeMinutes(index), catalog.getTimelinePosition(index),
+                catalog.getRating(index), isWatched(index), isCurrent(index));
+        movie.setId(catalog.getId(index));
+        return movie;
+    }
+}
@@ -0,0 +1,163 @@
+package com.enhanced.endgameodyssey;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+/**
+ * The upgrades of the MovieDatabase from every version since 5, the one the app was first released with.
+ * <p>
+ * Each Migration takes the tables from one version to the next in place, keeping the catalog, the profiles with
+ * their watch states, the history and the completed runs. SQLite can't drop or change a column before Android 11,
+ * so a table that loses a column or changes its primary key is copied into a new one and renamed. The tables
+ * have to end up exactly like the ones Room creates from the entities, Room checks them after the upgrade.
+ */
+final class MovieMigrations {
+
+    private MovieMigrations() {
+    }
+
+    // The migrations for MovieDatabase.configure(). defaultProfileName is the name of the profile that
+    // the progress of an install from before the profiles is moved to.
+    static Migration[] all(String defaultProfileName) {
+        return new Migration[]{MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, migration8To9(defaultProfileName),
+                MIGRATION_9_10, MIGRATION_10_11};
+    }
+
+    // The watch history
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `watch_event_table` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`movieId` INTEGER NOT NULL, `action` INTEGER NOT NULL, `timestamp` INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_watch_event_table_timestamp` ON `watch_event_table` (`timestamp`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `watch_summary_table` (`movieId` INTEGER NOT NULL, " +
+                    "`watchCount` INTEGER NOT NULL, `unwatchCount` INTEGER NOT NULL, `firstWatchedAt` INTEGER NOT NULL, " +
+                    "`lastWatchedAt` INTEGER NOT NULL, PRIMARY KEY(`movieId`))");
+        }
+    };
+
+    // The snapshots of completed runs
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `run_snapshot_table` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`completedAt` INTEGER NOT NULL, `movieCount` INTEGER NOT NULL, `watchedCount` INTEGER NOT NULL, " +
+                    "`currentIndex` INTEGER NOT NULL, `watchedBits` BLOB)");
+        }
+    };
+
+    // The imageFilename became the stable key of a movie for the catalog updates. The seeded catalog never had
+    // the same one twice, the first of any duplicate is kept all the same so the index can be made.
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("DELETE FROM `movie_table` WHERE `imageFilename` IS NOT NULL AND `id` NOT IN " +
+                    "(SELECT MIN(`id`) FROM `movie_table` WHERE `imageFilename` IS NOT NULL GROUP BY `imageFilename`)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_movie_table_imageFilename` ON `movie_table` (`imageFilename`)");
+        }
+    };
+
+    // The profiles. The watched and current columns of the movies become the watch states of the
+    // default profile, and the history and the runs so far become its history and runs.
+    static Migration migration8To9(final String defaultProfileName) {
+        return new Migration(8, 9) {
+            @Override
+            public void migrate(@NonNull SupportSQLiteDatabase db) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `profile_table` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`name` TEXT)");
+                db.execSQL("INSERT INTO `profile_table` (`id`, `name`) VALUES (?, ?)",
+                        new Object[]{Profile.DEFAULT_PROFILE_ID, defaultProfileName});
+
+                // Only the movies that are watched or current have a state, like after WatchStateDAO.setState()
+                db.execSQL("CREATE TABLE IF NOT EXISTS `watch_state_table` (`profileId` INTEGER NOT NULL, " +
+                        "`movieId` INTEGER NOT NULL, `watched` INTEGER NOT NULL, `current` INTEGER NOT NULL, " +
+                        "PRIMARY KEY(`profileId`, `movieId`))");
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_watch_state_table_movieId` ON `watch_state_table` (`movieId`)");
+                db.execSQL("INSERT INTO `watch_state_table` (`profileId`, `movieId`, `watched`, `current`) " +
+                                "SELECT ?, `id`, `watched`, `current` FROM `movie_table` WHERE `watched` = 1 OR `current` = 1",
+                        new Object[]{Profile.DEFAULT_PROFILE_ID});
+
+                db.execSQL("CREATE TABLE IF NOT EXISTS `movie_table_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`title` TEXT, `description` TEXT, `imageFilename` TEXT, `releaseDate` TEXT, " +
+                        "`runtimeMinutes` INTEGER NOT NULL, `timelinePosition` INTEGER NOT NULL, `rating` REAL NOT NULL)");
+                db.execSQL("INSERT INTO `movie_table_new` (`id`, `title`, `description`, `imageFilename`, `releaseDate`, " +
+                        "`runtimeMinutes`, `timelinePosition`, `rating`) SELECT `id`, `title`, `description`, `imageFilename`, " +
+                        "`releaseDate`, `runtimeMinutes`, `timelinePosition`, `rating` FROM `movie_table`");
+                db.execSQL("DROP TABLE `movie_table`");
+                db.execSQL("ALTER TABLE `movie_table_new` RENAME TO `movie_table`");
+                db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_movie_table_imageFilename` ON `movie_table` (`imageFilename`)");
+
+                db.execSQL("ALTER TABLE `watch_event_table` ADD COLUMN `profileId` INTEGER NOT NULL DEFAULT " +
+                        Profile.DEFAULT_PROFILE_ID);
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_watch_event_table_profileId_timestamp` " +
+                        "ON `watch_event_table` (`profileId`, `timestamp`)");
+
+                db.execSQL("CREATE TABLE IF NOT EXISTS `watch_summary_table_new` (`profileId` INTEGER NOT NULL, " +
+                        "`movieId` INTEGER NOT NULL, `watchCount` INTEGER NOT NULL, `unwatchCount` INTEGER NOT NULL, " +
+                        "`firstWatchedAt` INTEGER NOT NULL, `lastWatchedAt` INTEGER NOT NULL, PRIMARY KEY(`profileId`, `movieId`))");
+                db.execSQL("INSERT INTO `watch_summary_table_new` (`profileId`, `movieId`, `watchCount`, `unwatchCount`, " +
+                                "`firstWatchedAt`, `lastWatchedAt`) SELECT ?, `movieId`, `watchCount`, `unwatchCount`, " +
+                                "`firstWatchedAt`, `lastWatchedAt` FROM `watch_summary_table`",
+                        new Object[]{Profile.DEFAULT_PROFILE_ID});
+                db.execSQL("DROP TABLE `watch_summary_table`");
+                db.execSQL("ALTER TABLE `watch_summary_table_new` RENAME TO `watch_summary_table`");
+
+                db.execSQL("ALTER TABLE `run_snapshot_table` ADD COLUMN `profileId` INTEGER NOT NULL DEFAULT " +
+                        Profile.DEFAULT_PROFILE_ID);
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_run_snapshot_table_profileId_completedAt` " +
+                        "ON `run_snapshot_table` (`profileId`, `completedAt`)");
+            }
+        };
+    }
+
+    // The sync of the watch states. Nothing has been synced yet, so every state is dirty and is pushed by the first
+    // sync. It is stamped with the time of the upgrade: it is the progress of this device as of now, a change
+    // another device made earlier loses to it and one made later wins.
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `watch_state_table` ADD COLUMN `updatedAt` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `watch_state_table` ADD COLUMN `dirty` INTEGER NOT NULL DEFAULT 1");
+            db.execSQL("UPDATE `watch_state_table` SET `updatedAt` = ?", new Object[]{System.currentTimeMillis()});
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_watch_state_table_profileId_dirty` " +
+                    "ON `watch_state_table` (`profileId`, `dirty`)");
+        }
+    };
+
+    // The descriptions are stored deflated with a synopsis (see DescriptionCodec). Every description there is,
+    // the seeded ones and those of catalog updates and imports, is encoded here once, like a new one would be.
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `movie_table_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`title` TEXT, `synopsis` TEXT, `descriptionDeflated` BLOB, `imageFilename` TEXT, `releaseDate` TEXT, " +
+                    "`runtimeMinutes` INTEGER NOT NULL, `timelinePosition` INTEGER NOT NULL, `rating` REAL NOT NULL)");
+            db.execSQL("INSERT INTO `movie_table_new` (`id`, `title`, `imageFilename`, `releaseDate`, `runtimeMinutes`, " +
+                    "`timelinePosition`, `rating`) SELECT `id`, `title`, `imageFilename`, `releaseDate`, `runtimeMinutes`, " +
+                    "`timelinePosition`, `rating` FROM `movie_table`");
+
+            SupportSQLiteStatement encode = db.compileStatement(
+                    "UPDATE `movie_table_new` SET `synopsis` = ?, `descriptionDeflated` = ? WHERE `id` = ?");
+            Cursor cursor = db.query("SELECT `id`, `description` FROM `movie_table`");
+            try {
+                while (cursor.moveToNext()) {
+                    String description = cursor.getString(1);
+                    encode.bindString(1, DescriptionCodec.synopsis(description));
+                    encode.bindBlob(2, DescriptionCodec.deflate(description));
+                    encode.bindLong(3, cursor.getLong(0));
+                    encode.executeUpdateDelete();
+                }
+            } finally {
+                cursor.close();
+            }
+
+            db.execSQL("DROP TABLE `movie_table`");
+            db.execSQL("ALTER TABLE `movie_table_new` RENAME TO `movie_table`");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_movie_table_imageFilename` ON `movie_table` (`imageFilename`)");
+        }
+    };
+}
@@ -1,11 +1,23 @@
 package com.enhanced.endgameodyssey;
 
 import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.AsyncTask;
+import android.util.Log;
 
 import androidx.lifecycle.LiveData;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
 
 /**
  *     This is the movies repository class that the ViewModel will get its data from. It will serve as the
@@ -24,127 +36,920 @@ import java.util.List;
  */
 public class MovieRepository {
 
+    private static final String TAG = "MovieRepository";
+
+    private static final String PREFERENCES = "profiles";
+    private static final String KEY_ACTIVE_PROFILE = "active_profile_id";
+    private static final String KEY_SESSION_BUDGET = "session_budget_minutes";
+
+    // Compact the watch history every time this many events have been written
+    private static final int HISTORY_COMPACTION_INTERVAL = 50;
+    // Raw events older than this are folded into their movie's WatchSummary
+    private static final long HISTORY_RETENTION_MILLIS = 30L * 24 * 60 * 60 * 1000; // 30 days
+    // Never keep more raw events than this even if they are all within the retention window
+    private static final int HISTORY_MAX_EVENTS = 500;
+
+    // How many user actions can be undone
+    private static final int MAX_UNDO_COMMANDS = 20;
+
+    private MovieDatabase database;
+    private CatalogUpdater catalogUpdater;
+    private CatalogText catalogText;
+    private ProgressCache progressCache;
+    private PosterStore posterStore;
+    private SyncEngine syncEngine;
+    private File catalogCacheFile;
     private MovieDAO movieDAO;
-    private LiveData<List<Movie>> allMovies;
+    private WatchHistoryDAO watchHistoryDAO;
+    private RunSnapshotDAO runSnapshotDAO;
+    private ProfileDAO profileDAO;
+    private LiveData<List<Profile>> allProfiles;
+
+    // The locale of the last useLanguage(), the catalog text is put back in its language after a catalog update
+    private Locale locale;
+
+    // Every watch action, query and backup is scoped to this profile
+    private SharedPreferences preferences;
+    private int activeProfileId;
+
+    // The command log. Only ever touched on the main thread, the newest command is first.
+    private final ArrayDeque<WatchCommand> undoStack = new ArrayDeque<>();
+    private final ArrayDeque<WatchCommand> redoStack = new ArrayDeque<>();
 
     // Constructor
     public MovieRepository(Application application) {
-        MovieDatabase database = MovieDatabase.getInstance(application);
+        database = MovieDatabase.getInstance(application);
+        catalogUpdater = new CatalogUpdater(application, database);
+        catalogText = new CatalogText(application, database);
+        progressCache = new ProgressCache(application);
+        posterStore = PosterStore.getInstance(application);
+        catalogCacheFile = new File(application.getCacheDir(), "catalog.cache");
+        syncEngine = BuildConfig.SYNC_URL.isEmpty() ? null
+                : new SyncEngine(application, database, new HttpSyncTransport(BuildConfig.SYNC_URL));
         movieDAO = database.movieDAO();
-        allMovies = movieDAO.getAllMovies();
+        watchHistoryDAO = database.watchHistoryDAO();
+        runSnapshotDAO = database.runSnapshotDAO();
+        profileDAO = database.profileDAO();
+        allProfiles = profileDAO.getAllProfiles();
+
+        preferences = application.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        activeProfileId = preferences.getInt(KEY_ACTIVE_PROFILE, Profile.DEFAULT_PROFILE_ID);
+
+        // The first launch, or the cache was cleared together with the app's files
+        if (!progressCache.exists()) {
+            refreshProgress();
+        }
+    }
+
+    public int getActiveProfileId() {
+        return activeProfileId;
+    }
+
+    // Switching is only remembering another id, the ViewModel then re-queries the movies of the new profile.
+    // The command log of the previous profile is dropped so undo never changes a profile that isn't on screen.
+    public void setActiveProfileId(int profileId) {
+        if (profileId == activeProfileId) return;
+
+        activeProfileId = profileId;
+        preferences.edit().putInt(KEY_ACTIVE_PROFILE, profileId).apply();
+        undoStack.clear();
+        redoStack.clear();
+        refreshProgress();
+    }
+
+    // How long the viewing sessions of the SessionPlan may be, the same for every profile of the device
+    public int getSessionBudgetMinutes() {
+        return preferences.getInt(KEY_SESSION_BUDGET, SessionPlan.DEFAULT_BUDGET_MINUTES);
+    }
+
+    public void setSessionBudgetMinutes(int minutes) {
+        preferences.edit().putInt(KEY_SESSION_BUDGET, minutes).apply();
+    }
+
+    // Creates a profile on the background thread, its first movie of the timeline is its current movie.
+    public void createProfile(String name, ProfileCallback callback) {
+        new CreateProfileAsyncTask(database, callback).executeOnExecutor(MovieDatabase.WRITER, name);
     }
 
     // Execute update on the background thread (asynchronously) since Room doesn't allow execution of
     // database operations on the main thread which could freeze the app and can cause it to crash.
-    public void watch(int id) {
-        new WatchMovieAsyncTask(movieDAO).execute(id);
+    public void markAsWatched(int id, int nextId) {
+        execute(WatchCommand.watch(activeProfileId, id, nextId));
+    }
+
+    // Executed asynchronously (see markAsWatched() comments).
+    public void markAsUnwatched(int id, int nextId) {
+        execute(WatchCommand.unwatch(activeProfileId, id, nextId));
     }
 
-    // Executed asynchronously (see update() comments).
-    public void unwatch(int id) {
-        new UnwatchMovieAsyncTask(movieDAO).execute(id);
+    // Executed asynchronously (see markAsWatched() comments).
+    public void snap(int finaleId, int firstId) {
+        execute(WatchCommand.snap(activeProfileId, finaleId, firstId));
+    }
+
+    // Executed asynchronously (see markAsWatched() comments). Can be undone like any other action.
+    public void restoreRun(int snapshotId) {
+        execute(WatchCommand.restore(activeProfileId, snapshotId));
+    }
+
+    // Writes a backup of every movie, with the active profile's progress, into out on the background thread
+    // and closes it when done. See MovieBackup for the formats. Only reads, so it isn't run on the MovieDatabase.WRITER
+    // and doesn't hold up the writes while it streams; it waits for the writes asked for before it so the backup
+    // has every watch action taken before it, and each page is one query so it never sees half of a transaction.
+    public void exportBackup(OutputStream out, int format, BackupCallback callback) {
+        new ExportBackupAsyncTask(movieDAO, activeProfileId, out, format, callback)
+                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // Replaces every movie, and the active profile's progress, with the backup read from in on the background
+    // thread and closes it when done. The recorded deltas no longer match the movies after an import so the
+    // command log is cleared. The backup has the text of the device that made it, the catalog text of the
+    // language in use is applied again behind the import.
+    public void importBackup(InputStream in, BackupCallback callback) {
+        undoStack.clear();
+        redoStack.clear();
+        new ImportBackupAsyncTask(database, catalogText, activeProfileId, in, callback)
+                .executeOnExecutor(MovieDatabase.WRITER);
+        if (locale != null) {
+            new ApplyTextPackAsyncTask(catalogText, locale).executeOnExecutor(MovieDatabase.WRITER);
+        }
+        refreshProgress();
     }
 
-    // Executed asynchronously (see update() comments).
-    public void setAsCurrentMovie(int id) {
-        new SetAsCurrentMovieAsyncTask(movieDAO).execute(id);
+    // Adds the third-party catalog read from in (see CatalogImporter) to the installed one on the background
+    // thread and closes it when done. Movies that are already there are updated, not duplicated. The file is
+    // read on a thread of its own, only the batches are written on the MovieDatabase.WRITER, one at a time.
+    // Like after a catalog update the catalog text of the language in use is applied again over the import,
+    // and the command log is cleared.
+    public void importCatalog(InputStream in, BackupCallback callback) {
+        undoStack.clear();
+        redoStack.clear();
+        new ImportCatalogAsyncTask(database, in, catalogText, locale, progressCache, activeProfileId, callback)
+                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
-    // Executed asynchronously (see update() comments).
-    public void unwatchAllMovies() {
-        new UnwatchAllMovies(movieDAO).execute();
+    // Puts the catalog text of the locale's language into the database on the background thread if it
+    // isn't there yet (see CatalogText). Nothing is read when the language hasn't changed.
+    public void useLanguage(Locale locale) {
+        this.locale = locale;
+        new ApplyTextPackAsyncTask(catalogText, locale).executeOnExecutor(MovieDatabase.WRITER);
     }
 
-    // Room already executes the database operation that returns the LiveData of all movies
-    // in the background thread so we don't have to explicitly execute it asynchronously.
-    public LiveData<List<Movie>> getAllMovies() {
-        return allMovies;
+    // Applies the catalog feed read from in (see CatalogUpdater) on the background thread and closes it when done.
+    // The feed is read on a thread of its own, only the delta is written on the MovieDatabase.WRITER. The feed
+    // only has one language, the catalog text of the language in use is applied again over the changed movies.
+    // The command log is cleared like after an import: undoing a watch of a movie the feed deleted would give it
+    // a watch state again.
+    public void updateCatalog(InputStream in, CatalogCallback callback) {
+        undoStack.clear();
+        redoStack.clear();
+        new UpdateCatalogAsyncTask(catalogUpdater, in, null, catalogText, locale, progressCache, database,
+                activeProfileId, callback).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // Same as above but downloads the feed from url first.
+    public void updateCatalog(String url, CatalogCallback callback) {
+        undoStack.clear();
+        redoStack.clear();
+        new UpdateCatalogAsyncTask(catalogUpdater, null, url, catalogText, locale, progressCache, database,
+                activeProfileId, callback).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // Syncs the active profile's watch state with the other devices on the background thread (see SyncEngine).
+    // Returns false if this build has no sync server. Merged remote changes aren't in the command log,
+    // so it is cleared like after an import. The requests are made on a thread of their own, only the merges
+    // are written on the MovieDatabase.WRITER.
+    public boolean sync(SyncCallback callback) {
+        if (syncEngine == null) return false;
+
+        undoStack.clear();
+        redoStack.clear();
+        new SyncAsyncTask(syncEngine, progressCache, database, activeProfileId, callback)
+                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        return true;
+    }
+
+    // Installs a poster pack (see PosterBundle) read from in on the background thread and closes it when done.
+    public void installPosterPack(InputStream in, PosterCallback callback) {
+        new InstallPosterPackAsyncTask(posterStore, in, callback).execute();
+    }
+
+    // Reverts the most recent command. Returns false if there is nothing to undo.
+    // The command is moved between the stacks right away on the main thread so that quick repeated
+    // taps undo successive commands. The AsyncTasks all run on the MovieDatabase.WRITER so the undo
+    // is always written after the command itself has finished recording its delta.
+    public boolean undo() {
+        WatchCommand command = undoStack.pollFirst();
+        if (command == null) return false;
+
+        pushBounded(redoStack, command);
+        new ApplyDeltaAsyncTask(database, false).executeOnExecutor(MovieDatabase.WRITER, command);
+        refreshProgress();
+        return true;
+    }
+
+    // Re-applies the most recently undone command. Returns false if there is nothing to redo.
+    public boolean redo() {
+        WatchCommand command = redoStack.pollFirst();
+        if (command == null) return false;
+
+        pushBounded(undoStack, command);
+        new ApplyDeltaAsyncTask(database, true).executeOnExecutor(MovieDatabase.WRITER, command);
+        refreshProgress();
+        return true;
+    }
+
+    private void execute(WatchCommand command) {
+        // A new action makes the undone ones unreachable, just like in any text editor
+        redoStack.clear();
+        pushBounded(undoStack, command);
+        new ExecuteCommandAsyncTask(database).executeOnExecutor(MovieDatabase.WRITER, command);
+        refreshProgress();
+    }
+
+    // Rewrites the ProgressCache read by the home-screen widget. Scheduled right after every write to the
+    // watch state; the MovieDatabase.WRITER runs it once that write has committed. The tasks that hand their
+    // writes to the WRITER from a thread of their own schedule it themselves once they are done.
+    private void refreshProgress() {
+        new RefreshProgressAsyncTask(progressCache, database).executeOnExecutor(MovieDatabase.WRITER, activeProfileId);
+    }
+
+    // Keeps only the newest MAX_UNDO_COMMANDS commands so the log can't grow forever
+    private static void pushBounded(ArrayDeque<WatchCommand> stack, WatchCommand command) {
+        stack.addFirst(command);
+        if (stack.size() > MAX_UNDO_COMMANDS) {
+            stack.removeLast();
+        }
+    }
+
+    // The MovieStream queries the movies on its own background thread, once per burst of writes,
+    // so we don't have to explicitly execute it asynchronously. restored is the list that was on screen
+    // before process death, or null.
+    public LiveData<MovieList> getAllMovies(int profileId, MovieStream.Restored restored) {
+        return new MovieStream(database, profileId, MovieFilter.ALL, catalogCacheFile, restored);
+    }
+
+    // The movies of one tab, see MovieFilter
+    public LiveData<MovieList> getFilteredMovies(int profileId, int filter) {
+        return new MovieStream(database, profileId, filter, catalogCacheFile, null);
+    }
+
+    public LiveData<List<Profile>> getAllProfiles() {
+        return allProfiles;
+    }
+
+    // The raw watch events of the profile between the two timestamps (inclusive), newest first.
+    // Events older than the retention window have already been folded into getWatchSummaries().
+    public LiveData<List<WatchEvent>> getWatchHistory(int profileId, long from, long to) {
+        return watchHistoryDAO.getEventsBetween(profileId, from, to);
+    }
+
+    public LiveData<List<WatchSummary>> getWatchSummaries(int profileId) {
+        return watchHistoryDAO.getSummaries(profileId);
+    }
+
+    // Every completed run of the profile, newest first
+    public LiveData<List<RunSnapshot>> getRunSnapshots(int profileId) {
+        return runSnapshotDAO.getAllSnapshots(profileId);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Run Snapshots
+
+    // Saves the current watch state as a completed run. Called inside the snap's transaction after the
+    // finale has been marked as watched and before everything is reset, so the snapshot is the whole completed
+    // run. The finale is remembered as the current movie, restoreRunSnapshot() brings it back unwatched.
+    private static void saveRunSnapshot(MovieDatabase database, int profileId, int finaleId) {
+        List<MovieState> states = database.watchStateDAO().getOrderedStates(profileId);
+
+        boolean[] watched = new boolean[states.size()];
+        int watchedCount = 0;
+        int currentIndex = -1;
+
+        for (int i = 0; i < states.size(); i++) {
+            watched[i] = states.get(i).isWatched();
+            if (watched[i]) watchedCount++;
+            if (states.get(i).getId() == finaleId) currentIndex = i;
+        }
+
+        database.runSnapshotDAO().insert(new RunSnapshot(profileId, System.currentTimeMillis(),
+                states.size(), watchedCount, currentIndex, WatchStateCodec.encode(watched)));
+    }
+
+    // Writes the watch state of a RunSnapshot back onto the movie table, touching only the rows that differ.
+    private static void restoreRunSnapshot(MovieDatabase database, WatchCommand command) {
+        RunSnapshot snapshot = database.runSnapshotDAO().getSnapshot(command.getSnapshotId());
+        if (snapshot == null || snapshot.getProfileId() != command.getProfileId()) return;
+
+        int profileId = command.getProfileId();
+        WatchStateDAO watchStateDAO = database.watchStateDAO();
+        List<MovieState> before = watchStateDAO.getOrderedStates(profileId);
+        boolean[] watched = WatchStateCodec.decode(snapshot.getWatchedBits(), before.size());
+
+        // The current movie is never a watched one: the finale of the completed run comes back current and
+        // unwatched so the restored run can be snapped again. A snapshot whose current movie isn't in the
+        // catalog anymore continues at the first movie it hasn't watched.
+        int currentIndex = snapshot.getCurrentIndex();
+        if (currentIndex >= 0 && currentIndex < before.size()) {
+            watched[currentIndex] = false;
+        } else {
+            currentIndex = -1;
+            for (int i = 0; i < watched.length && currentIndex < 0; i++) {
+                if (!watched[i]) currentIndex = i;
+            }
+        }
+
+        List<MovieState> after = new ArrayList<>(before.size());
+        for (int i = 0; i < before.size(); i++) {
+            MovieState state = new MovieState(before.get(i).getId(), watched[i], i == currentIndex);
+            if (!state.sameAs(before.get(i))) {
+                watchStateDAO.setState(new WatchState(profileId, state.getId(), state.isWatched(), state.isCurrent()));
+            }
+            after.add(state);
+        }
+
+        logEvent(database, profileId, WatchEvent.ALL_MOVIES, WatchEvent.ACTION_RESTORE);
+        command.recordDelta(before, after);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Watch History
+
+    // Appends an event to the watch history. This must be called inside the same transaction as the
+    // state change it describes so the history and the watch states can never disagree.
+    // The insert is O(1); every HISTORY_COMPACTION_INTERVAL-th event also pays for a compaction. We use the
+    // event's row id to decide instead of a counter so that it keeps working across process restarts.
+    private static void logEvent(MovieDatabase database, int profileId, int movieId, int action) {
+        WatchHistoryDAO dao = database.watchHistoryDAO();
+        long now = System.currentTimeMillis();
+        long eventId = dao.insert(new WatchEvent(profileId, movieId, action, now));
+
+        if (eventId % HISTORY_COMPACTION_INTERVAL == 0) {
+            compactHistory(dao, eventId, now);
+        }
+    }
+
+    // Folds every event that is either older than the retention window or beyond the newest
+    // HISTORY_MAX_EVENTS into one WatchSummary per profile and movie, then deletes those events.
+    // The work is bounded by the number of events being compacted and the number of movies they touch.
+    private static void compactHistory(WatchHistoryDAO dao, long newestEventId, long now) {
+        long upToId = Math.max(
+                dao.getLastEventIdBefore(now - HISTORY_RETENTION_MILLIS),
+                newestEventId - HISTORY_MAX_EVENTS);
+
+        if (upToId <= 0) return;
+
+        List<WatchSummary> folded = dao.summarizeEventsUpTo(upToId);
+        if (folded.isEmpty()) return;
+
+        List<Integer> movieIds = new ArrayList<>(folded.size());
+        for (WatchSummary summary : folded) {
+            movieIds.add(summary.getMovieId());
+        }
+
+        // Merge the freshly folded events into the summaries we already have
+        List<WatchSummary> existing = dao.getSummariesOf(movieIds);
+        for (WatchSummary summary : folded) {
+            for (WatchSummary stored : existing) {
+                if (stored.isSummaryOf(summary.getProfileId(), summary.getMovieId())) {
+                    summary.merge(stored);
+                    break;
+                }
+            }
+        }
+
+        dao.insertSummaries(folded);
+        dao.deleteEventsUpTo(upToId);
+    }
+
+    // Implemented by the View to follow the progress of an export or import. Both methods are called on the main thread.
+    public interface BackupCallback {
+        void onProgress(int done, int total);
+
+        void onComplete(boolean success, int rows);
+    }
+
+    // Implemented by the ViewModel to switch to a profile once it has been created. Called on the main thread.
+    public interface ProfileCallback {
+        void onProfileCreated(int profileId);
+    }
+
+    // Implemented by the View to learn how a catalog update went. Called on the main thread.
+    // changedMovies is -1 if the update failed.
+    public interface CatalogCallback {
+        void onCatalogUpdated(int changedMovies);
+    }
+
+    // Implemented by the View to learn how a sync went. Called on the main thread.
+    // appliedChanges is -1 if the sync failed.
+    public interface SyncCallback {
+        void onSynced(int appliedChanges);
+    }
+
+    // Implemented by the View to learn how installing a poster pack went. Called on the main thread.
+    // posterCount is -1 if the pack couldn't be installed.
+    public interface PosterCallback {
+        void onPostersInstalled(int posterCount);
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
     // Asynchronous Tasks
 
     // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
-    // AsyncTask is inherited with Integer data type since doInBackground needs an int movie id.
-    private static class WatchMovieAsyncTask extends AsyncTask<Integer, Void, Void> {
+    // AsyncTask is inherited with WatchCommand data type since doInBackground needs the command to execute.
+    private static class ExecuteCommandAsyncTask extends AsyncTask<WatchCommand, Void, Void> {
 
-        private MovieDAO movieDAO;
+        private MovieDatabase database;
 
-        // Constructor: Since this class is static, we can't access the movieDAO member variable of
+        // Constructor: Since this class is static, we can't access the database member variable of
         // MovieRepository class directly so we have to pass it onto the constructor.
-        private WatchMovieAsyncTask(MovieDAO movieDAO) {
-            this.movieDAO = movieDAO;
+        private ExecuteCommandAsyncTask(MovieDatabase database) {
+            this.database = database;
         }
 
-        // This function, invoked using the class method execute(), uses varargs or variable arguments since
-        // we can pass any number of movies to update but in this case, we'll only update one.
+        // The command, its history events and the recording of its delta are all done in one transaction.
         @Override
-        protected Void doInBackground(Integer... integers) {
-            movieDAO.watch(integers[0]);
+        protected Void doInBackground(final WatchCommand... commands) {
+            database.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    execute(database, commands[0]);
+                }
+            });
             return null;
         }
+
+        private static void execute(MovieDatabase database, WatchCommand command) {
+            if (command.getType() == WatchCommand.TYPE_RESTORE) {
+                restoreRunSnapshot(database, command);
+                return;
+            }
+
+            int profileId = command.getProfileId();
+            WatchStateDAO watchStateDAO = database.watchStateDAO();
+
+            // Read only the rows this command can change so we can record its delta
+            List<Integer> ids = new ArrayList<>();
+            ids.add(command.getMovieId());
+            if (command.getNextMovieId() != WatchCommand.NO_MOVIE) {
+                ids.add(command.getNextMovieId());
+            }
+            if (command.getType() == WatchCommand.TYPE_SNAP) {
+                ids.addAll(watchStateDAO.getActiveMovieIds(profileId));
+            }
+            List<MovieState> before = watchStateDAO.getStates(profileId, ids);
+
+            switch (command.getType()) {
+                case WatchCommand.TYPE_WATCH:
+                    // Set watched to true and current to false
+                    watchStateDAO.setState(new WatchState(profileId, command.getMovieId(), true, false));
+                    logEvent(database, profileId, command.getMovieId(), WatchEvent.ACTION_WATCH);
+                    break;
+
+                case WatchCommand.TYPE_UNWATCH:
+                    // Set watched to false, and set current to true
+                    watchStateDAO.setState(new WatchState(profileId, command.getMovieId(), false, true));
+                    logEvent(database, profileId, command.getMovieId(), WatchEvent.ACTION_UNWATCH);
+                    break;
+
+                case WatchCommand.TYPE_SNAP:
+                    watchStateDAO.setState(new WatchState(profileId, command.getMovieId(), true, false));
+                    logEvent(database, profileId, command.getMovieId(), WatchEvent.ACTION_WATCH);
+                    saveRunSnapshot(database, profileId, command.getMovieId());
+                    watchStateDAO.unwatchAllMovies(profileId, System.currentTimeMillis());
+                    logEvent(database, profileId, WatchEvent.ALL_MOVIES, WatchEvent.ACTION_RESET);
+                    break;
+            }
+
+            // Set current to true, this is usually done after watching a movie
+            if (command.getNextMovieId() != WatchCommand.NO_MOVIE) {
+                watchStateDAO.setState(new WatchState(profileId, command.getNextMovieId(), false, true));
+                logEvent(database, profileId, command.getNextMovieId(), WatchEvent.ACTION_SET_CURRENT);
+            }
+
+            command.recordDelta(before, watchStateDAO.getStates(profileId, ids));
+        }
     }
 
     // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
-    // AsyncTask is inherited with Integer data type since doInBackground needs a movie to execute.
-    private static class UnwatchMovieAsyncTask extends AsyncTask<Integer, Void, Void> {
+    // Writes either the "before" (undo) or the "after" (redo) states of a command's delta back in one transaction.
+    private static class ApplyDeltaAsyncTask extends AsyncTask<WatchCommand, Void, Void> {
 
-        private MovieDAO movieDAO;
+        private MovieDatabase database;
+        private boolean redo;
 
-        // Constructor: Since this class is static, we can't access the movieDAO member variable of
+        // Constructor: Since this class is static, we can't access the database member variable of
         // MovieRepository class directly so we have to pass it onto the constructor.
-        private UnwatchMovieAsyncTask(MovieDAO movieDAO) {
-            this.movieDAO = movieDAO;
+        private ApplyDeltaAsyncTask(MovieDatabase database, boolean redo) {
+            this.database = database;
+            this.redo = redo;
         }
 
-        // This function, invoked using the class method execute(), uses varargs or variable arguments since
-        // we can pass any number of ids to update but in this case, we'll only update one.
         @Override
-        protected Void doInBackground(Integer... integers) {
-            movieDAO.unwatch(integers[0]);
+        protected Void doInBackground(final WatchCommand... commands) {
+            final int profileId = commands[0].getProfileId();
+            final List<MovieState> states = redo ? commands[0].getAfter() : commands[0].getBefore();
+
+            database.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    WatchStateDAO watchStateDAO = database.watchStateDAO();
+
+                    for (MovieState state : states) {
+                        watchStateDAO.setState(new WatchState(profileId, state.getId(), state.isWatched(), state.isCurrent()));
+
+                        // The history only cares about what the row became
+                        int action = state.isWatched() ? WatchEvent.ACTION_WATCH
+                                : state.isCurrent() ? WatchEvent.ACTION_SET_CURRENT
+                                : WatchEvent.ACTION_UNWATCH;
+                        logEvent(database, profileId, state.getId(), action);
+                    }
+                }
+            });
             return null;
         }
     }
 
     // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
-    // AsyncTask is inherited with Integer data type since doInBackground needs a movie to execute.
-    private static class SetAsCurrentMovieAsyncTask extends AsyncTask<Integer, Void, Void> {
+    // AsyncTask is inherited with Integer progress since it publishes how many rows have been written so far.
+    private static class ExportBackupAsyncTask extends AsyncTask<Void, Integer, Integer> implements MovieBackup.ProgressListener {
 
         private MovieDAO movieDAO;
+        private int profileId;
+        private OutputStream out;
+        private int format;
+        private BackupCallback callback;
 
-        // Constructor: Since this class is static, we can't access the movieDAO member variable of
-        // MovieRepository class directly so we have to pass it onto the constructor.
-        private SetAsCurrentMovieAsyncTask(MovieDAO movieDAO) {
+        private ExportBackupAsyncTask(MovieDAO movieDAO, int profileId, OutputStream out, int format, BackupCallback callback) {
             this.movieDAO = movieDAO;
+            this.profileId = profileId;
+            this.out = out;
+            this.format = format;
+            this.callback = callback;
         }
 
-        // This function, invoked using the class method execute(), uses varargs or variable arguments since
-        // we can pass any number of ids to update but in this case, we'll only update one.
+        // Returns the number of rows written or -1 if the export failed
         @Override
-        protected Void doInBackground(Integer... integers) {
-            movieDAO.setAsCurrentMovie(integers[0]);
-            return null;
+        protected Integer doInBackground(Void... voids) {
+            try {
+                // Waits for the writes asked for before the export, the ones after it don't wait for the export
+                MovieDatabase.runOnWriter(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        return null;
+                    }
+                });
+                return MovieBackup.write(movieDAO, profileId, out, format, this);
+            } catch (IOException e) {
+                Log.e(TAG, "Export failed", e);
+                return -1;
+            } finally {
+                closeQuietly(out);
+            }
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            publishProgress(done, total);
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            callback.onProgress(values[0], values[1]);
+        }
+
+        @Override
+        protected void onPostExecute(Integer rows) {
+            callback.onComplete(rows >= 0, Math.max(rows, 0));
         }
     }
 
     // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
-    // AsyncTask is inherited without any types (Void) since doInBackground does not need any data to execute.
-    private static class UnwatchAllMovies extends AsyncTask<Void, Void, Void> {
+    // AsyncTask is inherited with Integer progress since it publishes how many rows have been imported so far.
+    private static class ImportBackupAsyncTask extends AsyncTask<Void, Integer, Integer> implements MovieBackup.ProgressListener {
 
-        private MovieDAO movieDAO;
+        private MovieDatabase database;
+        private CatalogText catalogText;
+        private int profileId;
+        private InputStream in;
+        private BackupCallback callback;
 
-        // Constructor: Since this class is static, we can't access the movieDAO member variable of
-        // MovieRepository class directly so we have to pass it onto the constructor.
-        private UnwatchAllMovies(MovieDAO movieDAO) {
-            this.movieDAO = movieDAO;
+        private ImportBackupAsyncTask(MovieDatabase database, CatalogText catalogText, int profileId, InputStream in,
+                                      BackupCallback callback) {
+            this.database = database;
+            this.catalogText = catalogText;
+            this.profileId = profileId;
+            this.in = in;
+            this.callback = callback;
+        }
+
+        // Returns the number of rows imported or -1 if the import failed
+        @Override
+        protected Integer doInBackground(Void... voids) {
+            try {
+                int rows = MovieBackup.read(database, profileId, in, this);
+
+                // The movies have the text of the backup now, whatever pack was applied before
+                catalogText.forget();
+                return rows;
+            } catch (IOException | RuntimeException e) {
+                // A RuntimeException is thrown by JsonReader on malformed JSON or by Room on bad rows
+                Log.e(TAG, "Import failed", e);
+                return -1;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            publishProgress(done, total);
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            callback.onProgress(values[0], values[1]);
+        }
+
+        @Override
+        protected void onPostExecute(Integer rows) {
+            callback.onComplete(rows >= 0, Math.max(rows, 0));
+        }
+    }
+
+    // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
+    // Runs on the thread pool, the file is read and parsed here and only each batch is written on the MovieDatabase.WRITER.
+    private static class ImportCatalogAsyncTask extends AsyncTask<Void, Integer, Integer> implements MovieBackup.ProgressListener {
+
+        private MovieDatabase database;
+        private InputStream in;
+        private CatalogText catalogText;
+        private Locale locale;
+        private ProgressCache progressCache;
+        private int profileId;
+        private BackupCallback callback;
+
+        private ImportCatalogAsyncTask(MovieDatabase database, InputStream in, CatalogText catalogText, Locale locale,
+                                       ProgressCache progressCache, int profileId, BackupCallback callback) {
+            this.database = database;
+            this.in = in;
+            this.catalogText = catalogText;
+            this.locale = locale;
+            this.progressCache = progressCache;
+            this.profileId = profileId;
+            this.callback = callback;
+        }
+
+        // Returns the number of movies imported or -1 if the import failed
+        @Override
+        protected Integer doInBackground(Void... voids) {
+            try {
+                return CatalogImporter.read(database, in, this);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Catalog import failed", e);
+                return -1;
+            } finally {
+                // Even a failed import may have committed some batches with the text of the file
+                catalogText.forget();
+                closeQuietly(in);
+            }
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            publishProgress(done, total);
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            callback.onProgress(values[0], values[1]);
+        }
+
+        // Every batch has committed by now. The text pack goes over them before the widget's progress is refreshed
+        // behind both, like after a catalog update.
+        @Override
+        protected void onPostExecute(Integer rows) {
+            if (locale != null) {
+                new ApplyTextPackAsyncTask(catalogText, locale).executeOnExecutor(MovieDatabase.WRITER);
+            }
+            new RefreshProgressAsyncTask(progressCache, database).executeOnExecutor(MovieDatabase.WRITER, profileId);
+            callback.onComplete(rows >= 0, Math.max(rows, 0));
+        }
+    }
+
+    // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
+    private static class ApplyTextPackAsyncTask extends AsyncTask<Void, Void, Void> {
+
+        private CatalogText catalogText;
+        private Locale locale;
+
+        private ApplyTextPackAsyncTask(CatalogText catalogText, Locale locale) {
+            this.catalogText = catalogText;
+            this.locale = locale;
         }
 
-        // This function, invoked using the class method execute(), uses varargs or variable arguments since
-        // we can pass any number of movies to update but in this case, we'll only update one.
         @Override
         protected Void doInBackground(Void... voids) {
-            movieDAO.unwatchAllMovies();
+            try {
+                String pack = catalogText.findPack(locale);
+                if (!catalogText.isApplied(pack)) {
+                    Log.d(TAG, "Applied the " + pack + " text of " + catalogText.apply(pack) + " movies");
+                }
+            } catch (IOException | RuntimeException e) {
+                // The catalog simply stays in the language it is in
+                Log.e(TAG, "Could not apply the catalog text of " + locale, e);
+            }
             return null;
         }
     }
+
+    // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
+    // Reads the feed either from the given stream or from the url, whichever is not null.
+    private static class UpdateCatalogAsyncTask extends AsyncTask<Void, Void, Integer> {
+
+        private CatalogUpdater catalogUpdater;
+        private InputStream in;
+        private String url;
+        private CatalogText catalogText;
+        private Locale locale;
+        private ProgressCache progressCache;
+        private MovieDatabase database;
+        private int profileId;
+        private CatalogCallback callback;
+
+        private UpdateCatalogAsyncTask(CatalogUpdater catalogUpdater, InputStream in, String url, CatalogText catalogText,
+                                       Locale locale, ProgressCache progressCache, MovieDatabase database, int profileId,
+                                       CatalogCallback callback) {
+            this.catalogUpdater = catalogUpdater;
+            this.in = in;
+            this.url = url;
+            this.catalogText = catalogText;
+            this.locale = locale;
+            this.progressCache = progressCache;
+            this.database = database;
+            this.profileId = profileId;
+            this.callback = callback;
+        }
+
+        // Returns the number of changed movies or -1 if the update failed
+        @Override
+        protected Integer doInBackground(Void... voids) {
+            try {
+                int changedMovies = in != null ? catalogUpdater.update(in) : catalogUpdater.update(url);
+
+                // The changed movies have the text of the feed now, whatever pack was applied before
+                if (changedMovies > 0) {
+                    catalogText.forget();
+                }
+                return changedMovies;
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Catalog update failed", e);
+                return -1;
+            } finally {
+                if (in != null) closeQuietly(in);
+            }
+        }
+
+        // The delta has committed by now. The text pack goes over it before the widget's progress is refreshed
+        // behind both, so the widget shows the current title in the language in use.
+        @Override
+        protected void onPostExecute(Integer changedMovies) {
+            if (changedMovies > 0 && locale != null) {
+                new ApplyTextPackAsyncTask(catalogText, locale).executeOnExecutor(MovieDatabase.WRITER);
+            }
+            new RefreshProgressAsyncTask(progressCache, database).executeOnExecutor(MovieDatabase.WRITER, profileId);
+            callback.onCatalogUpdated(changedMovies);
+        }
+    }
+
+    // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
+    // AsyncTask is inherited with String data type since doInBackground needs the name of the profile.
+    private static class CreateProfileAsyncTask extends AsyncTask<String, Void, Integer> {
+
+        private MovieDatabase database;
+        private ProfileCallback callback;
+
+        private CreateProfileAsyncTask(MovieDatabase database, ProfileCallback callback) {
+            this.database = database;
+            this.callback = callback;
+        }
+
+        // The profile and the WatchState of its first movie are created in one transaction
+        @Override
+        protected Integer doInBackground(final String... names) {
+            return database.runInTransaction(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int profileId = (int) database.profileDAO().insert(new Profile(names[0]));
+
+                    Integer firstMovieId = database.movieDAO().getFirstMovieId();
+                    if (firstMovieId != null) {
+                        database.watchStateDAO().setState(new WatchState(profileId, firstMovieId, false, true));
+                    }
+                    return profileId;
+                }
+            });
+        }
+
+        @Override
+        protected void onPostExecute(Integer profileId) {
+            callback.onProfileCreated(profileId);
+        }
+    }
+
+    // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
+    private static class SyncAsyncTask extends AsyncTask<Void, Void, Integer> {
+
+        private SyncEngine syncEngine;
+        private ProgressCache progressCache;
+        private MovieDatabase database;
+        private int profileId;
+        private SyncCallback callback;
+
+        private SyncAsyncTask(SyncEngine syncEngine, ProgressCache progressCache, MovieDatabase database, int profileId,
+                              SyncCallback callback) {
+            this.syncEngine = syncEngine;
+            this.progressCache = progressCache;
+            this.database = database;
+            this.profileId = profileId;
+            this.callback = callback;
+        }
+
+        // Returns the number of applied remote changes or -1 if the sync failed
+        @Override
+        protected Integer doInBackground(Void... voids) {
+            try {
+                return syncEngine.sync(profileId);
+            } catch (IOException | RuntimeException e) {
+                // A RuntimeException is thrown by JsonReader on a malformed response
+                Log.e(TAG, "Sync failed", e);
+                return -1;
+            }
+        }
+
+        // The merges have committed by now, the widget's progress is refreshed behind them like after any other write
+        @Override
+        protected void onPostExecute(Integer appliedChanges) {
+            new RefreshProgressAsyncTask(progressCache, database).executeOnExecutor(MovieDatabase.WRITER, profileId);
+            callback.onSynced(appliedChanges);
+        }
+    }
+
+    // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
+    private static class InstallPosterPackAsyncTask extends AsyncTask<Void, Void, Integer> {
+
+        private PosterStore posterStore;
+        private InputStream in;
+        private PosterCallback callback;
+
+        private InstallPosterPackAsyncTask(PosterStore posterStore, InputStream in, PosterCallback callback) {
+            this.posterStore = posterStore;
+            this.in = in;
+            this.callback = callback;
+        }
+
+        // Returns the number of posters in the pack or -1 if it couldn't be installed
+        @Override
+        protected Integer doInBackground(Void... voids) {
+            try {
+                return posterStore.install(in);
+            } catch (IOException e) {
+                Log.e(TAG, "Poster pack install failed", e);
+                return -1;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Integer posterCount) {
+            callback.onPostersInstalled(posterCount);
+        }
+    }
+
+    // This has to be static so it does not have a reference to the MovieRepository class otherwise it could cause a memory leak.
+    // AsyncTask is inherited with Integer data type since doInBackground needs the id of the profile.
+    private static class RefreshProgressAsyncTask extends AsyncTask<Integer, Void, Void> {
+
+        private ProgressCache progressCache;
+        private MovieDatabase database;
+
+        private RefreshProgressAsyncTask(ProgressCache progressCache, MovieDatabase database) {
+            this.progressCache = progressCache;
+            this.database = database;
+        }
+
+        @Override
+        protected Void doInBackground(Integer... profileIds) {
+            progressCache.refresh(database, profileIds[0]);
+            return null;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
 }
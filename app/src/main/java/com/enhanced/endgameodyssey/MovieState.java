@@ -0,0 +1,37 @@
+package com.enhanced.endgameodyssey;
+
+/**
+ * The watch state of a single movie, the only part of a Movie that ever changes.
+ * Room fills it from the catalog joined with the WatchStates of a profile (see WatchStateDAO.getStates()).
+ *
+ * It is used by the WatchCommand to remember what a row looked like before and after a user action.
+ */
+public class MovieState {
+
+    private int id;
+    private boolean watched;
+    private boolean current;
+
+    public MovieState(int id, boolean watched, boolean current) {
+        this.id = id;
+        this.watched = watched;
+        this.current = current;
+    }
+
+    public boolean sameAs(MovieState other) {
+        return id == other.id && watched == other.watched && current == other.current;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+
+    public boolean isCurrent() {
+        return current;
+    }
+}
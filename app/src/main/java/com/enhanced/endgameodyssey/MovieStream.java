@@ -0,0 +1,262 @@
+package com.enhanced.endgameodyssey;
+
+import android.database.Cursor;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The movies of one profile as LiveData, used instead of the LiveData Room generates for the query.
+ * <p>
+ * Room's LiveData re-runs the query on every invalidation, so a burst of writes (a snap, an undo right
+ * after it, an import committing page after page) means a re-query, a submitList(), a DiffUtil pass and an
+ * updateProgress() for each of them. This one instead:
+ * <ul>
+ *     <li>coalesces the invalidations of the movie and watch state tables that arrive within DEBOUNCE_MILLIS
+ *     of each other into a single query, run once the writes have gone quiet,</li>
+ *     <li>drops the result if it is the same as the last MovieList it emitted,</li>
+ *     <li>emits immutable MovieLists so no observer can change what the others see.</li>
+ * </ul>
+ * The catalog is only reloaded when the movie_table itself changed. It is shared by the streams of every
+ * profile, so a watch action only reads the profile's WatchState rows into two BitSets.
+ * <p>
+ * Everything runs on one background thread shared by every stream, the results are posted to the main thread.
+ * Each tab of the MainActivity has its own stream whose MovieFilter query runs right after the list was loaded,
+ * so a tab always has its rows ready and switching to it never waits for the database.
+ * <p>
+ * Every catalog loaded from the database is also written to a cache file. After process death a stream can
+ * be handed the Restored state of the MovieList that was on screen: it reads that catalog back from the file
+ * and emits the saved list before it runs its first query. The query result then comes in like any other
+ * change and only the rows that changed while the app was gone are rebound.
+ */
+public class MovieStream extends LiveData<MovieList> {
+
+    // Long enough to swallow the writes of one user action, short enough not to be noticed
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    private static final String TAG = "MovieStream";
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    // The catalog shared by every stream and whether the movie_table changed since it was loaded.
+    // Only touched on the EXECUTOR thread.
+    private static MovieCatalog catalog;
+    private static boolean catalogStale = true;
+    private static InvalidationTracker.Observer catalogObserver;
+    private static AtomicFile catalogCache;
+
+    private final MovieDatabase database;
+    private final int profileId;
+    private final int filter;
+
+    // Only touched on the EXECUTOR thread, dropped once it has been emitted
+    private Restored restored;
+
+    // Only touched on the EXECUTOR thread
+    private ScheduledFuture<?> pendingQuery;
+    private MovieList lastMovies;
+
+    private final InvalidationTracker.Observer tableObserver =
+            new InvalidationTracker.Observer("movie_table", "watch_state_table") {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    EXECUTOR.execute(scheduleQuery);
+                }
+            };
+
+    // (Re)starts the debounce window, the query only runs once no invalidation came in for DEBOUNCE_MILLIS
+    private final Runnable scheduleQuery = new Runnable() {
+        @Override
+        public void run() {
+            if (pendingQuery != null) {
+                pendingQuery.cancel(false);
+            }
+            pendingQuery = EXECUTOR.schedule(query, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    };
+
+    private final Runnable query = new Runnable() {
+        @Override
+        public void run() {
+            pendingQuery = null;
+            MovieList movies = MovieFilter.apply(database, profileId, filter, loadMovies(database, profileId));
+
+            if (lastMovies != null && lastMovies.sameAs(movies)) return;
+
+            lastMovies = movies;
+            postValue(movies);
+        }
+    };
+
+    // What a MovieList needs to be shown again after process death, see MovieViewModel.saveState()
+    public static class Restored {
+
+        private final int profileId;
+        private final long catalogKey;
+        private final byte[] watchedBits;
+        private final byte[] currentBits;
+
+        public Restored(int profileId, long catalogKey, byte[] watchedBits, byte[] currentBits) {
+            this.profileId = profileId;
+            this.catalogKey = catalogKey;
+            this.watchedBits = watchedBits;
+            this.currentBits = currentBits;
+        }
+    }
+
+    // filter is one of the MovieFilters. restored may be null, it is ignored if it isn't of this profile
+    // or if this stream is filtered.
+    public MovieStream(MovieDatabase database, int profileId, int filter, File catalogCacheFile, Restored restored) {
+        this.database = database;
+        this.profileId = profileId;
+        this.filter = filter;
+        this.restored = restored != null && restored.profileId == profileId && filter == MovieFilter.ALL ? restored : null;
+
+        synchronized (MovieStream.class) {
+            if (catalogCache == null) {
+                catalogCache = new AtomicFile(catalogCacheFile);
+            }
+        }
+    }
+
+    // Adding and removing the observer has to happen off the main thread since Room syncs its triggers then
+    @Override
+    protected void onActive() {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                watchCatalog(database);
+                emitRestored();
+                database.getInvalidationTracker().addObserver(tableObserver);
+
+                // Whatever changed while nobody was observing, query right away
+                query.run();
+            }
+        });
+    }
+
+    @Override
+    protected void onInactive() {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                database.getInvalidationTracker().removeObserver(tableObserver);
+                if (pendingQuery != null) {
+                    pendingQuery.cancel(false);
+                    pendingQuery = null;
+                }
+            }
+        });
+    }
+
+    // Shows the saved list before the first query if its catalog is in the cache file. The catalog stays stale:
+    // the file holds the catalog the database had when the process died, and a catalog update or an import may
+    // have changed the movie_table since, so the first query still reloads it and the change is diffed in.
+    // If nothing changed the reloaded catalog has the same key and this one is kept (see loadMovies()).
+    private void emitRestored() {
+        if (restored == null) return;
+
+        Restored saved = restored;
+        restored = null;
+        if (catalog != null) return;
+
+        MovieCatalog cached = readCatalogCache(saved.catalogKey);
+        if (cached == null) return;
+
+        catalog = cached;
+        lastMovies = new MovieList(catalog, BitSet.valueOf(saved.watchedBits), BitSet.valueOf(saved.currentBits));
+        postValue(lastMovies);
+    }
+
+    private static MovieCatalog readCatalogCache(long key) {
+        try {
+            FileInputStream in = catalogCache.openRead();
+            try {
+                return MovieCatalog.readFrom(in, key);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // No cache yet or a broken one, the query loads the catalog as usual
+            return null;
+        }
+    }
+
+    private static void writeCatalogCache(MovieCatalog catalog) {
+        FileOutputStream out = null;
+        try {
+            out = catalogCache.startWrite();
+            catalog.writeTo(out);
+            catalogCache.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write the catalog cache", e);
+            if (out != null) catalogCache.failWrite(out);
+        }
+    }
+
+    // The catalog observer stays registered for as long as the process lives (so does the database)
+    // so the shared catalog is marked stale even when no stream is active.
+    private static void watchCatalog(MovieDatabase database) {
+        if (catalogObserver != null) return;
+
+        catalogObserver = new InvalidationTracker.Observer("movie_table") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        catalogStale = true;
+                    }
+                });
+            }
+        };
+        database.getInvalidationTracker().addObserver(catalogObserver);
+    }
+
+    private static MovieList loadMovies(MovieDatabase database, int profileId) {
+        if (catalogStale || catalog == null) {
+            MovieCatalog loaded = MovieCatalog.load(database.movieDAO().getCatalogCursor());
+            catalogStale = false;
+
+            // A write that left the movies as they were, or the first query after a restore, keeps the instance
+            // the lists on screen already have: their rows compare as the same and the cache file is up to date.
+            if (catalog == null || loaded.getKey() != catalog.getKey()) {
+                catalog = loaded;
+                writeCatalogCache(catalog);
+            }
+        }
+
+        BitSet watched = new BitSet(catalog.size());
+        BitSet current = new BitSet(catalog.size());
+
+        Cursor cursor = database.watchStateDAO().getStateCursor(profileId);
+        try {
+            while (cursor.moveToNext()) {
+                // A state whose movie was removed from the catalog in the meantime has no index
+                int index = catalog.indexOf(cursor.getInt(0));
+                if (index < 0) continue;
+
+                watched.set(index, cursor.getInt(1) != 0);
+                current.set(index, cursor.getInt(2) != 0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return new MovieList(catalog, watched, current);
+    }
+}
@@ -0,0 +1,50 @@
+package com.enhanced.endgameodyssey;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.viewpager.widget.PagerAdapter;
+
+/**
+ * The PagerAdapter of the tabs of the MainActivity. The pages are the RecyclerViews of the tabs, created
+ * once by the Activity, this only adds them to and removes them from the ViewPager. Since the ViewPager
+ * keeps every page (see MainActivity), a page is never recreated when its tab is switched to.
+ */
+public class MovieTabAdapter extends PagerAdapter {
+
+    private final View[] pages;
+    private final CharSequence[] titles;
+
+    public MovieTabAdapter(View[] pages, CharSequence[] titles) {
+        this.pages = pages;
+        this.titles = titles;
+    }
+
+    @Override
+    public int getCount() {
+        return pages.length;
+    }
+
+    @NonNull
+    @Override
+    public Object instantiateItem(@NonNull ViewGroup container, int position) {
+        container.addView(pages[position]);
+        return pages[position];
+    }
+
+    @Override
+    public void destroyItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
+        container.removeView((View) object);
+    }
+
+    @Override
+    public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
+        return view == object;
+    }
+
+    @Override
+    public CharSequence getPageTitle(int position) {
+        return titles[position];
+    }
+}
@@ -1,12 +1,22 @@
 package com.enhanced.endgameodyssey;
 
 import android.app.Application;
+import android.os.Bundle;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
+import androidx.arch.core.util.Function;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.Transformations;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * This is the MovieViewModel class which inherits the AndroidViewModel class.
@@ -32,33 +42,240 @@ import java.util.List;
 public class MovieViewModel extends AndroidViewModel {
 
     private MovieRepository repository;
-    private LiveData<List<Movie>> allMovies;
+
+    // Everything the user sees is the data of the active profile. The LiveData below follow this one
+    // so switching profiles swaps what they emit without the Activity having to observe anything new.
+    private MutableLiveData<Integer> activeProfileId = new MutableLiveData<>();
+
+    private LiveData<MovieList> allMovies;
+    private SparseArray<LiveData<MovieList>> filteredMovies = new SparseArray<>();
+    private LiveData<List<WatchSummary>> watchSummaries;
+    private LiveData<List<RunSnapshot>> runSnapshots;
+
+    // The remaining movies split into sessions of sessionBudget minutes, re-planned from the previous plan
+    // whenever a movie is watched (see SessionPlan.update())
+    private MutableLiveData<Integer> sessionBudget = new MutableLiveData<>();
+    private MediatorLiveData<SessionPlan> sessionPlan = new MediatorLiveData<>();
+
+    private static final String KEY_PROFILE_ID = "movies_profile_id";
+    private static final String KEY_CATALOG_KEY = "movies_catalog_key";
+    private static final String KEY_WATCHED_BITS = "movies_watched_bits";
+    private static final String KEY_CURRENT_BITS = "movies_current_bits";
+
+    // The list that was on screen before process death, handed to the first MovieStream of its profile
+    private MovieStream.Restored restored;
 
     public MovieViewModel(@NonNull Application application) {
         super(application);
 
         // Pass the application to the MovieRepository constructor
         repository = new MovieRepository(application);
-        allMovies = repository.getAllMovies();
+        activeProfileId.setValue(repository.getActiveProfileId());
+
+        allMovies = Transformations.switchMap(activeProfileId, new Function<Integer, LiveData<MovieList>>() {
+            @Override
+            public LiveData<MovieList> apply(Integer profileId) {
+                LiveData<MovieList> movies = repository.getAllMovies(profileId, restored);
+                restored = null;
+                return movies;
+            }
+        });
+
+        watchSummaries = Transformations.switchMap(activeProfileId, new Function<Integer, LiveData<List<WatchSummary>>>() {
+            @Override
+            public LiveData<List<WatchSummary>> apply(Integer profileId) {
+                return repository.getWatchSummaries(profileId);
+            }
+        });
+
+        runSnapshots = Transformations.switchMap(activeProfileId, new Function<Integer, LiveData<List<RunSnapshot>>>() {
+            @Override
+            public LiveData<List<RunSnapshot>> apply(Integer profileId) {
+                return repository.getRunSnapshots(profileId);
+            }
+        });
+
+        sessionBudget.setValue(repository.getSessionBudgetMinutes());
+
+        Observer<Object> replan = new Observer<Object>() {
+            @Override
+            public void onChanged(Object ignored) {
+                MovieList movies = allMovies.getValue();
+                if (movies == null) return;
+
+                SessionPlan previous = sessionPlan.getValue();
+                int budget = sessionBudget.getValue();
+                sessionPlan.setValue(previous != null ? previous.update(movies, budget) : SessionPlan.of(movies, budget));
+            }
+        };
+        sessionPlan.addSource(allMovies, replan);
+        sessionPlan.addSource(sessionBudget, replan);
+    }
+
+    // The ViewModel doesn't survive process death, the Activity's saved instance state does. Only the key
+    // of the catalog and the bits of the list are saved, the catalog itself is cached by the MovieStream.
+    public void saveState(Bundle outState) {
+        MovieList movies = allMovies.getValue();
+        Integer profileId = activeProfileId.getValue();
+        if (movies == null || profileId == null) return;
+
+        outState.putInt(KEY_PROFILE_ID, profileId);
+        outState.putLong(KEY_CATALOG_KEY, movies.getCatalog().getKey());
+        outState.putByteArray(KEY_WATCHED_BITS, movies.getWatchedBits());
+        outState.putByteArray(KEY_CURRENT_BITS, movies.getCurrentBits());
+    }
+
+    // Must be called before the movies are observed, which is when the MovieStream is created.
+    // A ViewModel that survived (a configuration change) already has its list and ignores this.
+    public void restoreState(Bundle savedState) {
+        if (allMovies.getValue() != null || !savedState.containsKey(KEY_CATALOG_KEY)) return;
+
+        restored = new MovieStream.Restored(savedState.getInt(KEY_PROFILE_ID), savedState.getLong(KEY_CATALOG_KEY),
+                savedState.getByteArray(KEY_WATCHED_BITS), savedState.getByteArray(KEY_CURRENT_BITS));
+    }
+
+    public void switchProfile(int profileId) {
+        if (profileId == repository.getActiveProfileId()) return;
+
+        repository.setActiveProfileId(profileId);
+        activeProfileId.setValue(profileId);
+    }
+
+    // Creates the profile and switches to it once it is in the database
+    public void createProfile(String name) {
+        repository.createProfile(name, new MovieRepository.ProfileCallback() {
+            @Override
+            public void onProfileCreated(int profileId) {
+                switchProfile(profileId);
+            }
+        });
+    }
+
+    // What the watch button of the MovieDetailsFragment does to the movie at timelinePosition: unwatch it if
+    // it is watched, else watch it or, if it is the finale, snap. The next and the first movie come from the
+    // Timeline of the catalog on screen. Returns the message to confirm the action with, 0 if nothing was done.
+    public int toggleWatched(int id, int timelinePosition, boolean watched) {
+        MovieList movies = allMovies.getValue();
+        if (movies == null) return 0;
+
+        Timeline timeline = movies.getCatalog().getTimeline();
+
+        if (watched) {
+            markAsUnwatched(id, timeline.getNextId(timelinePosition));
+            return R.string.marked_as_unwatched;
+        } else if (timeline.isFinale(timelinePosition)) {
+            snap(id, timeline.getFirstId());
+            return R.string.snap;
+        } else {
+            markAsWatched(id, timeline.getNextId(timelinePosition));
+            return R.string.marked_as_watched;
+        }
+    }
+
+    public void markAsWatched(int id, int nextId) {
+        repository.markAsWatched(id, nextId);
+    }
+
+    public void markAsUnwatched(int id, int nextId) {
+        repository.markAsUnwatched(id, nextId);
+    }
+
+    public void snap(int finaleId, int firstId) {
+        repository.snap(finaleId, firstId);
     }
 
-    public void watch(int id) {
-        repository.watch(id);
+    public void setSessionBudgetMinutes(int minutes) {
+        repository.setSessionBudgetMinutes(minutes);
+        sessionBudget.setValue(minutes);
     }
 
-    public void unwatch(int id) {
-        repository.unwatch(id);
+    public void restoreRun(int snapshotId) {
+        repository.restoreRun(snapshotId);
     }
 
-    public void setAsCurrentMovie(int id) {
-        repository.setAsCurrentMovie(id);
+    public void exportBackup(OutputStream out, int format, MovieRepository.BackupCallback callback) {
+        repository.exportBackup(out, format, callback);
     }
 
-    public void unwatchAllMovies() {
-        repository.unwatchAllMovies();
+    public void importBackup(InputStream in, MovieRepository.BackupCallback callback) {
+        repository.importBackup(in, callback);
     }
 
-    public LiveData<List<Movie>> getAllMovies() {
+    public void importCatalog(InputStream in, MovieRepository.BackupCallback callback) {
+        repository.importCatalog(in, callback);
+    }
+
+    // Called whenever the Activity is created, which is also what a change of the device's language does
+    public void useLanguage(Locale locale) {
+        repository.useLanguage(locale);
+    }
+
+    public void updateCatalog(InputStream in, MovieRepository.CatalogCallback callback) {
+        repository.updateCatalog(in, callback);
+    }
+
+    public void updateCatalog(String url, MovieRepository.CatalogCallback callback) {
+        repository.updateCatalog(url, callback);
+    }
+
+    public boolean sync(MovieRepository.SyncCallback callback) {
+        return repository.sync(callback);
+    }
+
+    public void installPosterPack(InputStream in, MovieRepository.PosterCallback callback) {
+        repository.installPosterPack(in, callback);
+    }
+
+    public boolean undo() {
+        return repository.undo();
+    }
+
+    public boolean redo() {
+        return repository.redo();
+    }
+
+    public LiveData<Integer> getActiveProfileId() {
+        return activeProfileId;
+    }
+
+    public LiveData<List<Profile>> getAllProfiles() {
+        return repository.getAllProfiles();
+    }
+
+    public LiveData<MovieList> getAllMovies() {
         return allMovies;
     }
+
+    // The movies of the tab with the MovieFilter, created the first time a tab asks so they survive a rotation too
+    public LiveData<MovieList> getFilteredMovies(final int filter) {
+        if (filter == MovieFilter.ALL) return allMovies;
+
+        LiveData<MovieList> movies = filteredMovies.get(filter);
+        if (movies == null) {
+            movies = Transformations.switchMap(activeProfileId, new Function<Integer, LiveData<MovieList>>() {
+                @Override
+                public LiveData<MovieList> apply(Integer profileId) {
+                    return repository.getFilteredMovies(profileId, filter);
+                }
+            });
+            filteredMovies.put(filter, movies);
+        }
+        return movies;
+    }
+
+    public LiveData<List<WatchEvent>> getWatchHistory(long from, long to) {
+        return repository.getWatchHistory(repository.getActiveProfileId(), from, to);
+    }
+
+    public LiveData<List<WatchSummary>> getWatchSummaries() {
+        return watchSummaries;
+    }
+
+    public LiveData<List<RunSnapshot>> getRunSnapshots() {
+        return runSnapshots;
+    }
+
+    public LiveData<SessionPlan> getSessionPlan() {
+        return sessionPlan;
+    }
 }
@@ -0,0 +1,166 @@
+package com.enhanced.endgameodyssey;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A poster pack, many posters packed into one file that is memory-mapped instead of read.
+ * <p>
+ * The file starts with an index and is followed by the encoded images (PNG or JPEG) back to back:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    count
+ * count times, sorted by name:
+ *     UTF    name        the imageFilename of the movie, as written by DataOutputStream.writeUTF()
+ *     int    offset      from the start of the file
+ *     int    length
+ *     int    width       of the encoded image, used to subsample it without decoding its header first
+ *     int    height
+ * the images
+ * </pre>
+ * Only the index is read into memory when a bundle is opened. An image is decoded straight out of the
+ * mapped region when it is asked for, so the pages of the posters that are never shown are never read.
+ * The packPosters task in app/build.gradle writes this format.
+ */
+public final class PosterBundle {
+
+    private static final int MAGIC = 0x45474F50; // "EGOP"
+    private static final int VERSION = 1;
+
+    private final MappedByteBuffer buffer;
+
+    // The index, all sorted by name so a lookup is a binary search
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] widths;
+    private final int[] heights;
+
+    private PosterBundle(MappedByteBuffer buffer, String[] names, int[] offsets, int[] lengths, int[] widths, int[] heights) {
+        this.buffer = buffer;
+        this.names = names;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.widths = widths;
+        this.heights = heights;
+    }
+
+    // Maps the file and reads its index. Throws an IOException if it isn't a valid bundle.
+    public static PosterBundle open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            // The mapping stays valid after the channel is closed
+            FileChannel channel = randomAccessFile.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        DataInputStream index = new DataInputStream(new ByteBufferInputStream(buffer.duplicate()));
+        if (index.readInt() != MAGIC) {
+            throw new IOException("Not a poster bundle");
+        }
+        if (index.readInt() > VERSION) {
+            throw new IOException("Poster bundle was made by a newer version of the app");
+        }
+
+        int count = index.readInt();
+        String[] names = new String[count];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            names[i] = index.readUTF();
+            offsets[i] = index.readInt();
+            lengths[i] = index.readInt();
+            widths[i] = index.readInt();
+            heights[i] = index.readInt();
+
+            if (offsets[i] < 0 || lengths[i] < 0 || (long) offsets[i] + lengths[i] > buffer.capacity()) {
+                throw new IOException("Poster " + names[i] + " is outside of the bundle");
+            }
+            if (i > 0 && names[i - 1].compareTo(names[i]) >= 0) {
+                throw new IOException("Poster bundle index is not sorted");
+            }
+        }
+
+        return new PosterBundle(buffer, names, offsets, lengths, widths, heights);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public boolean contains(String name) {
+        return Arrays.binarySearch(names, name) >= 0;
+    }
+
+    // Decodes the poster subsampled to about the requested size, null if the bundle doesn't have it.
+    // Pass 0 for either dimension to decode it at full size.
+    public Bitmap decode(String name, int requestedWidth, int requestedHeight) {
+        int i = Arrays.binarySearch(names, name);
+        if (i < 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(widths[i], heights[i], requestedWidth, requestedHeight);
+
+        ByteBuffer image = buffer.duplicate();
+        image.limit(offsets[i] + lengths[i]);
+        image.position(offsets[i]);
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(image), null, options);
+    }
+
+    // The largest power of two that keeps the image at least as large as requested
+    private static int sampleSize(int width, int height, int requestedWidth, int requestedHeight) {
+        int sampleSize = 1;
+        if (requestedWidth <= 0 || requestedHeight <= 0) return sampleSize;
+
+        while (width / (sampleSize * 2) >= requestedWidth && height / (sampleSize * 2) >= requestedHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // Reads a ByteBuffer from its position up to its limit without copying it first
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) return -1;
+
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the poster of a movie by its imageFilename.
+ * <p>
+ * Poster packs (see PosterBundle) are installed into the posters directory of the app's files and mapped
+ * when the store is created. The newest pack wins if two of them have the same poster. The posters that
+ * ship with the app are drawable resources and are only looked up by name when no pack has the poster,
+ * so installing a pack for an imported catalog doesn't need an app update.
+ */
+public final class PosterStore {
+
+    private static final String TAG = "PosterStore";
+
+    private static final String DIRECTORY = "posters";
+    private static final String EXTENSION = ".bundle";
+
+    private static PosterStore instance;
+
+    private final Context context;
+    private final File directory;
+
+    // Newest first. Replaced as a whole when a pack is installed so readers never need a lock.
+    private volatile List<PosterBundle> bundles = Collections.emptyList();
+
+    private PosterStore(Context context) {
+        this.context = context.getApplicationContext();
+        this.directory = new File(this.context.getFilesDir(), DIRECTORY);
+        reload();
+    }
+
+    public static synchronized PosterStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PosterStore(context);
+        }
+        return instance;
+    }
+
+    // Shows the poster in the imageView. A poster from a pack is decoded on a background thread, on the
+    // thread pool so it doesn't wait behind the database tasks, a drawable resource is set right away.
+    // The imageView is tagged with the poster it was last asked to show: decodes can finish in any order,
+    // and one that is no longer wanted must not replace the poster of a movie shown after it.
+    public void load(String imageFilename, ImageView imageView) {
+        imageView.setTag(imageFilename);
+
+        for (PosterBundle bundle : bundles) {
+            if (bundle.contains(imageFilename)) {
+                // Rather nothing than the previous movie's poster until the decode is done
+                imageView.setImageDrawable(null);
+                new DecodePosterAsyncTask(bundle, imageFilename, imageView).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                return;
+            }
+        }
+
+        int resId = context.getResources().getIdentifier(imageFilename, "drawable", context.getPackageName());
+        if (resId != 0) {
+            imageView.setImageResource(resId);
+        } else {
+            Log.w(TAG, imageFilename + " not found.");
+        }
+    }
+
+    // Copies the pack into the posters directory and maps it, returns the number of posters in it.
+    // The copy is checked before it replaces anything so a broken file never ends up installed.
+    // Must be called on a background thread.
+    public int install(InputStream in) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        File temporary = new File(directory, "install.tmp");
+        OutputStream out = new FileOutputStream(temporary);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            out.close();
+        }
+
+        int size;
+        try {
+            size = PosterBundle.open(temporary).size();
+        } catch (IOException e) {
+            temporary.delete();
+            throw e;
+        }
+
+        File installed = new File(directory, System.currentTimeMillis() + EXTENSION);
+        if (!temporary.renameTo(installed)) {
+            temporary.delete();
+            throw new IOException("Could not install the poster pack");
+        }
+
+        reload();
+        return size;
+    }
+
+    private void reload() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        // The files are named after the time they were installed
+        Arrays.sort(files, Collections.reverseOrder());
+
+        List<PosterBundle> opened = new ArrayList<>();
+        for (File file : files) {
+            if (!file.getName().endsWith(EXTENSION)) continue;
+
+            try {
+                opened.add(PosterBundle.open(file));
+            } catch (IOException e) {
+                Log.e(TAG, "Skipping broken poster pack " + file, e);
+            }
+        }
+        bundles = opened;
+    }
+
+    // This has to be static so it does not hold on to the Activity of the ImageView, which is only weakly referenced.
+    private static class DecodePosterAsyncTask extends AsyncTask<Void, Void, Bitmap> {
+
+        private PosterBundle bundle;
+        private String imageFilename;
+        private WeakReference<ImageView> imageViewReference;
+        private int width;
+        private int height;
+
+        private DecodePosterAsyncTask(PosterBundle bundle, String imageFilename, ImageView imageView) {
+            this.bundle = bundle;
+            this.imageFilename = imageFilename;
+            this.imageViewReference = new WeakReference<>(imageView);
+
+            // Before it is laid out the view has no size yet, then the screen is the limit
+            this.width = imageView.getWidth() > 0
+                    ? imageView.getWidth() : imageView.getResources().getDisplayMetrics().widthPixels;
+            this.height = imageView.getHeight() > 0
+                    ? imageView.getHeight() : imageView.getResources().getDisplayMetrics().heightPixels;
+        }
+
+        @Override
+        protected Bitmap doInBackground(Void... voids) {
+            return bundle.decode(imageFilename, width, height);
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap bitmap) {
+            ImageView imageView = imageViewReference.get();
+            if (imageView != null && bitmap != null && imageFilename.equals(imageView.getTag())) {
+                imageView.setImageBitmap(bitmap);
+            }
+        }
+    }
+}
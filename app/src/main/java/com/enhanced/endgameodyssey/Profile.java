@@ -0,0 +1,38 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * This is the Profile entity, one viewer of the device. Every profile has its own WatchStates
+ * but all of them share the same catalog.
+ */
+@Entity(tableName = "profile_table")
+public class Profile {
+
+    // The profile that is created together with the database
+    public static final int DEFAULT_PROFILE_ID = 1;
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+
+    private String name;
+
+    public Profile(String name) {
+        this.name = name;
+    }
+
+    // Setters
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
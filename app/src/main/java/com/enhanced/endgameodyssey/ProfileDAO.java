@@ -0,0 +1,29 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * This is the Data Access Object for the Profile entity.
+ */
+@Dao
+public interface ProfileDAO {
+
+    // Returns the id of the new profile
+    @Insert
+    long insert(Profile profile);
+
+    @Query("SELECT * FROM profile_table ORDER BY id ASC")
+    LiveData<List<Profile>> getAllProfiles();
+
+    // The name of the profile is its key on the sync server
+    @Query("SELECT name FROM profile_table WHERE id=:id")
+    String getName(int id);
+
+    @Query("SELECT id FROM profile_table")
+    List<Integer> getProfileIds();
+}
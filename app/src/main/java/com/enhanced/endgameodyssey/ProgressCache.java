@@ -0,0 +1,90 @@
+package com.enhanced.endgameodyssey;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the WatchProgress of the active profile in a file of a few dozen bytes.
+ * <p>
+ * The MovieRepository refreshes it after every write to the watch state, which costs one aggregate query
+ * on a thread that already has the database open. The ProgressWidgetProvider then only has to read the
+ * file, so a widget update never opens Room or loads the movies no matter how often the launcher asks.
+ * <p>
+ * The file is written through an AtomicFile so a reader never sees half of an update.
+ */
+public final class ProgressCache {
+
+    private static final String TAG = "ProgressCache";
+
+    private static final String FILENAME = "progress.bin";
+    private static final int VERSION = 1;
+
+    private final Context context;
+    private final AtomicFile file;
+
+    public ProgressCache(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new AtomicFile(new File(this.context.getFilesDir(), FILENAME));
+    }
+
+    public boolean exists() {
+        return file.getBaseFile().exists();
+    }
+
+    // Returns null if the cache has not been written yet or can't be read
+    public WatchProgress read() {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(file.readFully()));
+            if (in.readInt() != VERSION) return null;
+
+            String currentTitle = in.readBoolean() ? in.readUTF() : null;
+            return new WatchProgress(currentTitle, in.readInt(), in.readInt(), in.readInt());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Queries the progress of the profile, writes it into the cache and pushes it to the widgets.
+    // Must be called on a background thread.
+    public void refresh(MovieDatabase database, int profileId) {
+        WatchProgress progress = database.watchStateDAO().getProgress(profileId);
+        write(progress);
+
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] widgetIds = manager.getAppWidgetIds(new ComponentName(context, ProgressWidgetProvider.class));
+        if (widgetIds.length > 0) {
+            ProgressWidgetProvider.updateWidgets(context, manager, widgetIds, progress);
+        }
+    }
+
+    private void write(WatchProgress progress) {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(VERSION);
+            data.writeBoolean(progress.getCurrentTitle() != null);
+            if (progress.getCurrentTitle() != null) {
+                data.writeUTF(progress.getCurrentTitle());
+            }
+            data.writeInt(progress.getMovieCount());
+            data.writeInt(progress.getWatchedCount());
+            data.writeInt(progress.getMinutesLeft());
+            data.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write the progress cache", e);
+            if (out != null) file.failWrite(out);
+        }
+    }
+}
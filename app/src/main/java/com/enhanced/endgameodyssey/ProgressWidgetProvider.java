@@ -0,0 +1,52 @@
+package com.enhanced.endgameodyssey;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.Context;
+import android.content.Intent;
+import android.widget.RemoteViews;
+
+/**
+ * The home-screen widget that shows the current movie, the percentage watched and the time left.
+ *
+ * It reads everything from the ProgressCache, a single small file read, and never opens the database.
+ * The cache pushes fresh values to the widgets itself whenever the watch state changes, so the periodic
+ * update below only matters after a reboot or when a widget is first placed.
+ */
+public class ProgressWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        updateWidgets(context, appWidgetManager, appWidgetIds, new ProgressCache(context).read());
+    }
+
+    // progress is null until the app has been opened once
+    public static void updateWidgets(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds,
+                                     WatchProgress progress) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_progress);
+
+        if (progress == null) {
+            views.setTextViewText(R.id.widget_text_current, context.getString(R.string.widget_open_app));
+            views.setProgressBar(R.id.widget_progress_bar, 100, 0, false);
+            views.setTextViewText(R.id.widget_text_percent, context.getString(R.string.percent, 0));
+            views.setTextViewText(R.id.widget_text_time_left, "");
+        } else {
+            String current = progress.getCurrentTitle() != null
+                    ? progress.getCurrentTitle() : context.getString(R.string.widget_all_watched);
+
+            views.setTextViewText(R.id.widget_text_current, current);
+            views.setProgressBar(R.id.widget_progress_bar, 100, progress.getPercent(), false);
+            views.setTextViewText(R.id.widget_text_percent, context.getString(R.string.percent, progress.getPercent()));
+            views.setTextViewText(R.id.widget_text_time_left, context.getString(R.string.time_left,
+                    MovieDetailsFragment.getTimeString(progress.getMinutesLeft())));
+        }
+
+        // Tapping the widget opens the app
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        views.setOnClickPendingIntent(R.id.widget_root, pendingIntent);
+
+        appWidgetManager.updateAppWidget(appWidgetIds, views);
+    }
+}
@@ -0,0 +1,116 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The movies most like each movie, for the related titles of the MovieDetailsFragment.
+ * <p>
+ * The similarities are worked out at build time from the titles and descriptions by the generateRelatedIndex
+ * task in app/build.gradle and shipped as the related.index asset:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    k           the number of related movies per movie
+ * int    count
+ * count times, sorted:
+ *     UTF    name        the imageFilename of the movie
+ * count times k, in the order of the names, most related first:
+ *     short  index       of the related movie among the names, -1 when there are fewer than k
+ * </pre>
+ * Looking up the related movies of a movie is a binary search for its name and a read of one row of the
+ * table, the device never looks at the text. Movies that were added to the catalog after the build (a
+ * catalog update or import) aren't in the index and have no related movies.
+ */
+public final class RelatedMovies {
+
+    private static final String TAG = "RelatedMovies";
+
+    private static final String ASSET = "related.index";
+    private static final int MAGIC = 0x45474F52; // "EGOR"
+    private static final int VERSION = 1;
+
+    private static RelatedMovies instance;
+
+    private final int k;
+    private final String[] names;
+
+    // The related movies of names[i] are table[i * k .. i * k + k)
+    private final short[] table;
+
+    private RelatedMovies(int k, String[] names, short[] table) {
+        this.k = k;
+        this.names = names;
+        this.table = table;
+    }
+
+    // Reads the index the first time it is asked for, null if it couldn't be read.
+    // Must be called on a background thread.
+    public static synchronized RelatedMovies getInstance(Context context) {
+        if (instance == null) {
+            try {
+                instance = load(context.getAssets().open(ASSET));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not load the related movies", e);
+            }
+        }
+        return instance;
+    }
+
+    // The index if it has already been read, so the main thread never waits for it
+    public static synchronized RelatedMovies peekInstance() {
+        return instance;
+    }
+
+    private static RelatedMovies load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (data.readInt() != MAGIC || data.readInt() > VERSION) {
+                throw new IOException("Not a related movies index this version can read");
+            }
+
+            int k = data.readInt();
+            int count = data.readInt();
+
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = data.readUTF();
+            }
+
+            short[] table = new short[count * k];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = data.readShort();
+            }
+
+            return new RelatedMovies(k, names, table);
+        } finally {
+            data.close();
+        }
+    }
+
+    // The most related movies that can be
+    public int getMaxRelated() {
+        return k;
+    }
+
+    // Fills related with the imageFilenames of the movies related to the one with imageFilename,
+    // most related first, and returns how many there are
+    public int findRelated(String imageFilename, String[] related) {
+        int i = imageFilename == null ? -1 : Arrays.binarySearch(names, imageFilename);
+        if (i < 0) return 0;
+
+        int count = 0;
+        for (int j = i * k; j < i * k + k && count < related.length; j++) {
+            if (table[j] >= 0) {
+                related[count++] = names[table[j]];
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,84 @@
+package com.enhanced.endgameodyssey;
+
+import java.util.BitSet;
+
+/**
+ * The runtime of the unwatched movies from any movie of the catalog to the finale, answered in O(log n).
+ * <p>
+ * It is a Fenwick tree (binary indexed tree) over the runtimes of the unwatched movies in catalog order,
+ * which is timeline order, watched ones count as 0. Summing the rest of the list for every row that is bound
+ * would be O(n) per row and O(n²) to scroll through a large catalog. Watching or unwatching a movie is an
+ * O(log n) update of the tree instead of a rebuild, see update().
+ * <p>
+ * It is mutable and only used on the main thread, each MovieAdapter keeps its own in step with the MovieList it shows.
+ */
+public final class RemainingRuntime {
+
+    private final MovieCatalog catalog;
+
+    // tree[i] is the sum of the movies (i - lowestOneBit(i), i], 1-based
+    private final long[] tree;
+    private long total;
+
+    // Builds the tree in O(n) rather than with n updates
+    public RemainingRuntime(MovieList movies) {
+        catalog = movies.getCatalog();
+        int size = catalog.size();
+        tree = new long[size + 1];
+
+        for (int i = 1; i <= size; i++) {
+            if (!movies.isWatched(i - 1)) {
+                tree[i] += catalog.getRuntimeMinutes(i - 1);
+            }
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+
+        for (int i = size; i > 0; i -= i & -i) {
+            total += tree[i];
+        }
+    }
+
+    public MovieCatalog getCatalog() {
+        return catalog;
+    }
+
+    // Applies the movies that were watched or unwatched between the two snapshots of the catalog
+    public void update(MovieList oldMovies, MovieList newMovies) {
+        BitSet changed = newMovies.changedSince(oldMovies);
+
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            boolean watched = newMovies.isWatched(i);
+            if (watched != oldMovies.isWatched(i)) {
+                add(i, watched ? -catalog.getRuntimeMinutes(i) : catalog.getRuntimeMinutes(i));
+            }
+        }
+    }
+
+    private void add(int index, long minutes) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += minutes;
+        }
+        total += minutes;
+    }
+
+    // The unwatched minutes of the movies before index
+    private long before(int index) {
+        long sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // The unwatched minutes from the movie at index, included, to the end of the timeline
+    public long from(int index) {
+        return total - before(index);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,75 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * This is the RunSnapshot entity. A snapshot is taken every time the user finishes the timeline,
+ * right before the snap resets every movie, so the completed run is never lost and can be restored later.
+ *
+ * The watched flags are stored bit-packed by the WatchStateCodec in timeline order, which together
+ * with the few metadata columns makes a snapshot only a few bytes long even for a huge catalog.
+ */
+@Entity(tableName = "run_snapshot_table", indices = {@Index({"profileId", "completedAt"})})
+public class RunSnapshot {
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+
+    private int profileId;
+    private long completedAt;
+
+    // The size of the catalog and how many of its movies were watched when the snapshot was taken
+    private int movieCount;
+    private int watchedCount;
+
+    // The timeline index (not the id) of the movie that was current, -1 if there was none
+    private int currentIndex;
+
+    // See WatchStateCodec
+    private byte[] watchedBits;
+
+    public RunSnapshot(int profileId, long completedAt, int movieCount, int watchedCount, int currentIndex, byte[] watchedBits) {
+        this.profileId = profileId;
+        this.completedAt = completedAt;
+        this.movieCount = movieCount;
+        this.watchedCount = watchedCount;
+        this.currentIndex = currentIndex;
+        this.watchedBits = watchedBits;
+    }
+
+    // Setters
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public int getProfileId() {
+        return profileId;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public int getMovieCount() {
+        return movieCount;
+    }
+
+    public int getWatchedCount() {
+        return watchedCount;
+    }
+
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    public byte[] getWatchedBits() {
+        return watchedBits;
+    }
+}
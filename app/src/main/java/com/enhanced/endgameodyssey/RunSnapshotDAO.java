@@ -0,0 +1,25 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * This is the Data Access Object for the RunSnapshot entity, the completed runs of the timeline.
+ */
+@Dao
+public interface RunSnapshotDAO {
+
+    @Insert
+    void insert(RunSnapshot snapshot);
+
+    @Query("SELECT * FROM run_snapshot_table WHERE id=:id")
+    RunSnapshot getSnapshot(int id);
+
+    // The profile's runs, newest first
+    @Query("SELECT * FROM run_snapshot_table WHERE profileId=:profileId ORDER BY completedAt DESC")
+    LiveData<List<RunSnapshot>> getAllSnapshots(int profileId);
+}
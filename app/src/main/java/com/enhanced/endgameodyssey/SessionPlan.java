@@ -0,0 +1,234 @@
+package com.enhanced.endgameodyssey;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The movies that are left to watch, in timeline order, split into viewing sessions (evenings) of at most
+ * budgetMinutes each. A session is filled until the next movie doesn't fit anymore; a movie that is longer
+ * than the budget on its own gets a session of its own.
+ * <p>
+ * Because the sessions are filled in order, a session only depends on where it starts. Watching or
+ * unwatching a movie therefore can't change the sessions before the one it is in, and as soon as a
+ * re-planned session starts at the same movie as an old one, every session after it is the same as well.
+ * update() re-plans only that stretch in between and copies the rest, usually one or two sessions,
+ * instead of walking the whole catalog again. A plan is immutable, update() returns a new one.
+ */
+public final class SessionPlan {
+
+    // Used until the user picks a session length
+    public static final int DEFAULT_BUDGET_MINUTES = 180;
+
+    private final MovieList movies;
+    private final int budgetMinutes;
+
+    // Session s starts with the movie at catalog index starts[s] and has counts[s] movies of minutes[s] in total
+    private final int[] starts;
+    private final int[] counts;
+    private final int[] minutes;
+    private final int size;
+
+    private SessionPlan(MovieList movies, int budgetMinutes, int[] starts, int[] counts, int[] minutes, int size) {
+        this.movies = movies;
+        this.budgetMinutes = budgetMinutes;
+        this.starts = starts;
+        this.counts = counts;
+        this.minutes = minutes;
+        this.size = size;
+    }
+
+    // Plans every movie that isn't watched from scratch
+    public static SessionPlan of(MovieList movies, int budgetMinutes) {
+        Builder builder = new Builder(movies, budgetMinutes, 16);
+        builder.planFrom(0, null, 0, Integer.MAX_VALUE);
+        return builder.build();
+    }
+
+    // The plan of the newer snapshot of the same movies, re-planned from the first movie that was watched
+    // or unwatched since this plan. A different catalog or budget is planned from scratch.
+    public SessionPlan update(MovieList newMovies, int newBudgetMinutes) {
+        if (newMovies == movies && newBudgetMinutes == budgetMinutes) return this;
+        if (newMovies.getCatalog() != movies.getCatalog() || newBudgetMinutes != budgetMinutes) {
+            return of(newMovies, newBudgetMinutes);
+        }
+
+        BitSet changed = newMovies.changedSince(movies);
+        if (changed.isEmpty()) {
+            return new SessionPlan(newMovies, budgetMinutes, starts, counts, minutes, size);
+        }
+        int firstChanged = changed.nextSetBit(0);
+        int lastChanged = changed.length() - 1;
+
+        // The last session that starts before the first change is the first one that can be different.
+        // One that starts right at the change is different too, as is the one before it, whose last
+        // movie was chosen because the changed one didn't fit anymore.
+        int session = Arrays.binarySearch(starts, 0, size, firstChanged);
+        session = (session >= 0 ? session : -session - 1) - 1;
+
+        Builder builder = new Builder(newMovies, budgetMinutes, size + 4);
+        if (session < 0) {
+            builder.planFrom(0, this, 0, lastChanged);
+        } else {
+            builder.copy(this, 0, session);
+            builder.planFrom(starts[session], this, session, lastChanged);
+        }
+        return builder.build();
+    }
+
+    public MovieList getMovies() {
+        return movies;
+    }
+
+    public int getBudgetMinutes() {
+        return budgetMinutes;
+    }
+
+    // The number of sessions it takes to watch every movie that is left
+    public int size() {
+        return size;
+    }
+
+    // The catalog index of the first movie of the session
+    public int getFirstIndex(int session) {
+        return starts[session];
+    }
+
+    // The catalog index of the last movie of the session
+    public int getLastIndex(int session) {
+        int index = starts[session];
+        for (int left = counts[session] - 1; left > 0; left--) {
+            index = nextUnwatched(movies, index + 1);
+        }
+        return index;
+    }
+
+    public int getMovieCount(int session) {
+        return counts[session];
+    }
+
+    public int getMinutes(int session) {
+        return minutes[session];
+    }
+
+    // The number of sessions it takes to watch the movies that are left from the catalog index on, planned as if
+    // the marathon started there. Like in update(), the sessions are only planned until one starts at the same
+    // movie as a session of this plan, from there on they are this plan's, so it is usually one or two sessions.
+    public int sessionsFrom(int index) {
+        MovieCatalog catalog = movies.getCatalog();
+        int sessions = 0;
+        int sessionCount = 0;
+        int sessionMinutes = 0;
+
+        for (index = nextUnwatched(movies, index); index < catalog.size(); index = nextUnwatched(movies, index + 1)) {
+            int runtime = catalog.getRuntimeMinutes(index);
+
+            if (sessionCount > 0 && sessionMinutes + runtime > budgetMinutes) {
+                sessions++;
+                sessionCount = 0;
+                sessionMinutes = 0;
+            }
+
+            if (sessionCount == 0) {
+                int session = Arrays.binarySearch(starts, 0, size, index);
+                if (session >= 0) return sessions + size - session;
+            }
+            sessionCount++;
+            sessionMinutes += runtime;
+        }
+        return sessionCount > 0 ? sessions + 1 : sessions;
+    }
+
+    private static int nextUnwatched(MovieList movies, int from) {
+        int size = movies.getCatalog().size();
+        while (from < size && movies.isWatched(from)) from++;
+        return from;
+    }
+
+    // Appends sessions to growing arrays
+    private static class Builder {
+
+        private final MovieList movies;
+        private final MovieCatalog catalog;
+        private final int budgetMinutes;
+
+        private int[] starts;
+        private int[] counts;
+        private int[] minutes;
+        private int size;
+
+        private Builder(MovieList movies, int budgetMinutes, int capacity) {
+            this.movies = movies;
+            this.catalog = movies.getCatalog();
+            this.budgetMinutes = budgetMinutes;
+            starts = new int[capacity];
+            counts = new int[capacity];
+            minutes = new int[capacity];
+        }
+
+        // Copies the sessions from..to (exclusive) of the old plan
+        private void copy(SessionPlan old, int from, int to) {
+            ensureCapacity(size + to - from);
+            System.arraycopy(old.starts, from, starts, size, to - from);
+            System.arraycopy(old.counts, from, counts, size, to - from);
+            System.arraycopy(old.minutes, from, minutes, size, to - from);
+            size += to - from;
+        }
+
+        // Fills sessions from the catalog index on. Once a session starts after lastChanged at the same movie
+        // as a session of the old plan, the old plan's sessions from there on are copied instead.
+        private void planFrom(int index, SessionPlan old, int oldSession, int lastChanged) {
+            int sessionStart = -1;
+            int sessionCount = 0;
+            int sessionMinutes = 0;
+
+            for (index = nextUnwatched(movies, index); index < catalog.size(); index = nextUnwatched(movies, index + 1)) {
+                int runtime = catalog.getRuntimeMinutes(index);
+
+                if (sessionCount > 0 && sessionMinutes + runtime > budgetMinutes) {
+                    add(sessionStart, sessionCount, sessionMinutes);
+                    sessionCount = 0;
+                    sessionMinutes = 0;
+                }
+
+                if (sessionCount == 0) {
+                    if (old != null && index > lastChanged) {
+                        // The old sessions are ordered by where they start
+                        while (oldSession < old.size && old.starts[oldSession] < index) oldSession++;
+                        if (oldSession < old.size && old.starts[oldSession] == index) {
+                            copy(old, oldSession, old.size);
+                            return;
+                        }
+                    }
+                    sessionStart = index;
+                }
+                sessionCount++;
+                sessionMinutes += runtime;
+            }
+
+            if (sessionCount > 0) {
+                add(sessionStart, sessionCount, sessionMinutes);
+            }
+        }
+
+        private void add(int start, int count, int sessionMinutes) {
+            ensureCapacity(size + 1);
+            starts[size] = start;
+            counts[size] = count;
+            minutes[size] = sessionMinutes;
+            size++;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= starts.length) return;
+
+            int newCapacity = Math.max(capacity, starts.length * 2);
+            starts = Arrays.copyOf(starts, newCapacity);
+            counts = Arrays.copyOf(counts, newCapacity);
+            minutes = Arrays.copyOf(minutes, newCapacity);
+        }
+
+        private SessionPlan build() {
+            return new SessionPlan(movies, budgetMinutes, starts, counts, minutes, size);
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class SplashActivity extends AppCompatActivity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.mark(StartupTrace.SPLASH);
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
 
@@ -0,0 +1,146 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The phases of the cold start of the app, from the start of the process to the first frame of the list.
+ * <p>
+ * Each phase is marked once, the first time it is reached, as milliseconds since the process started. Only the
+ * cold start is traced: once MainActivity reports itself fully drawn the trace is finished and appended to the
+ * startup.trace file of the app as one line, and later Activities of the same process (a rotation, a relaunch
+ * from the recents) don't mark anything.
+ * <pre>
+ * 1571392800000 splash=212 main_create=301 db_open=355 first_emission=402 first_frame=470 fully_drawn=488
+ * </pre>
+ * The line starts with the wall clock time of the start, a phase that wasn't reached is left out (db_open is
+ * after fully_drawn when the list was restored after process death). Before Android 7.0 the start of the process
+ * isn't known and the phases count from the moment this class was first used, the splash.
+ */
+public final class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+
+    public static final int SPLASH = 0;
+    public static final int MAIN_CREATE = 1;
+    public static final int DB_OPEN = 2;
+    public static final int FIRST_EMISSION = 3;
+    public static final int FIRST_FRAME = 4;
+    public static final int FULLY_DRAWN = 5;
+
+    private static final String[] PHASES = {"splash", "main_create", "db_open", "first_emission", "first_frame",
+            "fully_drawn"};
+
+    private static final String FILE = "startup.trace";
+
+    // Started again from scratch when it gets this long, it is read off the device for a few starts at a time
+    private static final long MAX_FILE_LENGTH = 64 * 1024;
+
+    // The clock of the phases. Replaced by the StartupTest, Robolectric's SystemClock only moves when it is told to.
+    interface Clock {
+        long uptimeMillis();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+
+    private static Clock clock;
+    private static long processStart;
+    private static long startTime;
+    private static long[] marks = new long[PHASES.length];
+    private static boolean finished;
+
+    static {
+        begin(SYSTEM_CLOCK, Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartUptimeMillis() : SystemClock.uptimeMillis());
+    }
+
+    private StartupTrace() {
+    }
+
+    // Called on whichever thread reaches the phase, only the first call of each phase counts
+    public static synchronized void mark(int phase) {
+        if (finished || marks[phase] >= 0) return;
+        marks[phase] = clock.uptimeMillis() - processStart;
+    }
+
+    // The milliseconds from the start of the process to the phase, -1 if it hasn't been reached
+    public static synchronized long getMark(int phase) {
+        return marks[phase];
+    }
+
+    public static String getName(int phase) {
+        return PHASES[phase];
+    }
+
+    public static int getPhaseCount() {
+        return PHASES.length;
+    }
+
+    public static synchronized boolean isFinished() {
+        return finished;
+    }
+
+    // Marks FULLY_DRAWN, ends the trace and appends it to the trace file in the background
+    public static void finish(Context context) {
+        final String line;
+        synchronized (StartupTrace.class) {
+            if (finished) return;
+            mark(FULLY_DRAWN);
+            finished = true;
+            line = format();
+        }
+
+        final File file = new File(context.getApplicationContext().getFilesDir(), FILE);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = new FileOutputStream(file, file.length() < MAX_FILE_LENGTH);
+                    try {
+                        out.write(line.getBytes("UTF-8"));
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not write the startup trace", e);
+                }
+            }
+        });
+    }
+
+    // The line of the trace file
+    static synchronized String format() {
+        StringBuilder line = new StringBuilder().append(startTime);
+        for (int i = 0; i < PHASES.length; i++) {
+            if (marks[i] >= 0) {
+                line.append(' ').append(PHASES[i]).append('=').append(marks[i]);
+            }
+        }
+        return line.append('\n').toString();
+    }
+
+    // Starts a new trace at processStart. The StartupTest is one process for many starts and starts each of them
+    // with a clock of its own.
+    static synchronized void begin(Clock clock, long processStart) {
+        StartupTrace.clock = clock;
+        StartupTrace.processStart = processStart;
+        startTime = System.currentTimeMillis() - (clock.uptimeMillis() - processStart);
+        Arrays.fill(marks, -1);
+        finished = false;
+    }
+}
@@ -0,0 +1,45 @@
+package com.enhanced.endgameodyssey;
+
+/**
+ * The watch state of one movie as it travels between the devices and the sync server.
+ *
+ * The movie is identified by its catalog key (the imageFilename) because the ids of the movies differ from
+ * device to device. movieId is only meaningful on this device and is never sent.
+ */
+public class SyncChange {
+
+    private int movieId;
+    private String key;
+    private boolean watched;
+    private boolean current;
+    private long updatedAt;
+
+    public SyncChange(int movieId, String key, boolean watched, boolean current, long updatedAt) {
+        this.movieId = movieId;
+        this.key = key;
+        this.watched = watched;
+        this.current = current;
+        this.updatedAt = updatedAt;
+    }
+
+    // Getters
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+
+    public boolean isCurrent() {
+        return current;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,124 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Syncs the watch state of a profile with the other devices through a SyncTransport.
+ * <p>
+ * Every local write to a WatchState stamps it with the time and marks it dirty. A sync then:
+ * <ol>
+ *     <li>sends the dirty rows, BATCH_SIZE at a time, together with the server version we last saw,</li>
+ *     <li>merges what the server answers in one transaction per batch on the MovieDatabase.WRITER, which only waits
+ *     for the merge and never for the network: a remote change replaces the local row
+ *     only if it is newer (last writer wins per movie), and the rows we sent are marked clean unless they were
+ *     changed again in the meantime,</li>
+ *     <li>remembers the server version the server answered with.</li>
+ * </ol>
+ * Both the requests and the merge only ever touch the rows that changed on either side, never the whole catalog.
+ * The first batch is sent even if nothing is dirty so a sync always pulls.
+ */
+public final class SyncEngine {
+
+    private static final String PREFERENCES = "sync";
+    private static final String KEY_SINCE = "since_";
+
+    private static final int BATCH_SIZE = 200;
+
+    private final MovieDatabase database;
+    private final SyncTransport transport;
+    private final SharedPreferences preferences;
+
+    public SyncEngine(Context context, MovieDatabase database, SyncTransport transport) {
+        this.database = database;
+        this.transport = transport;
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    // Must be called on a background thread other than the MovieDatabase.WRITER. Returns the number of remote
+    // changes that were applied.
+    public int sync(final int profileId) throws IOException {
+        String profileKey = database.profileDAO().getName(profileId);
+        if (profileKey == null) throw new IOException("No profile " + profileId);
+
+        WatchStateDAO watchStateDAO = database.watchStateDAO();
+        long since = preferences.getLong(KEY_SINCE + profileId, 0);
+        int afterMovieId = 0;
+        int applied = 0;
+
+        while (true) {
+            final List<SyncChange> sent = watchStateDAO.getDirtyChanges(profileId, afterMovieId, BATCH_SIZE);
+            final SyncTransport.Response response = transport.exchange(profileKey, since, sent);
+
+            applied += MovieDatabase.runOnWriter(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return database.runInTransaction(new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            return merge(profileId, sent, response.getChanges());
+                        }
+                    });
+                }
+            });
+
+            // Saved after every batch so an interrupted sync doesn't download the same changes again
+            since = response.getVersion();
+            preferences.edit().putLong(KEY_SINCE + profileId, since).apply();
+
+            if (sent.size() < BATCH_SIZE) return applied;
+            afterMovieId = sent.get(sent.size() - 1).getMovieId();
+        }
+    }
+
+    private int merge(int profileId, List<SyncChange> sent, List<SyncChange> received) {
+        WatchStateDAO watchStateDAO = database.watchStateDAO();
+        MovieDAO movieDAO = database.movieDAO();
+
+        for (SyncChange change : sent) {
+            watchStateDAO.clearDirty(profileId, change.getMovieId(), change.getUpdatedAt());
+        }
+
+        int applied = 0;
+        for (SyncChange change : received) {
+            // A movie the other device has but this catalog doesn't (yet)
+            Integer movieId = movieDAO.getIdByKey(change.getKey());
+            if (movieId == null) continue;
+
+            WatchState local = watchStateDAO.getState(profileId, movieId);
+            if (local != null && local.getUpdatedAt() >= change.getUpdatedAt()) continue;
+
+            watchStateDAO.setState(new WatchState(profileId, movieId, change.isWatched(), change.isCurrent(),
+                    change.getUpdatedAt(), false));
+            applied++;
+        }
+
+        if (applied > 0) {
+            fixCurrentMovie(profileId);
+        }
+        return applied;
+    }
+
+    // Each device had its own current movie, after a merge the most recently chosen one stays current.
+    // If the merge left none, the first unwatched movie becomes current. Both are new local changes.
+    private void fixCurrentMovie(int profileId) {
+        WatchStateDAO watchStateDAO = database.watchStateDAO();
+        List<WatchState> currentStates = watchStateDAO.getCurrentStates(profileId);
+
+        for (int i = 1; i < currentStates.size(); i++) {
+            WatchState state = currentStates.get(i);
+            watchStateDAO.setState(new WatchState(profileId, state.getMovieId(), state.isWatched(), false));
+        }
+
+        if (currentStates.isEmpty()) {
+            Integer firstUnwatchedId = watchStateDAO.getFirstUnwatchedMovieId(profileId);
+            if (firstUnwatchedId != null) {
+                watchStateDAO.setState(new WatchState(profileId, firstUnwatchedId, false, true));
+            }
+        }
+    }
+}
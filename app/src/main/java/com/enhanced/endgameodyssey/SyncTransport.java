@@ -0,0 +1,36 @@
+package com.enhanced.endgameodyssey;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * How the SyncEngine talks to the sync server. One exchange sends a batch of local changes and gets back
+ * every change the server has seen for the profile since the given server version.
+ *
+ * The HttpSyncTransport talks to a real (or a local stand-in) server, the LocalSyncServer answers in-process.
+ */
+public interface SyncTransport {
+
+    // changes may be empty, which makes it a pull only
+    Response exchange(String profileKey, long since, List<SyncChange> changes) throws IOException;
+
+    class Response {
+
+        // The server version to pass as since in the next exchange
+        private final long version;
+        private final List<SyncChange> changes;
+
+        public Response(long version, List<SyncChange> changes) {
+            this.version = version;
+            this.changes = changes;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<SyncChange> getChanges() {
+            return changes;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The thumbnails of the list rows, every poster scaled down into a cell of one small image.
+ * <p>
+ * The atlas is generated at build time by the generateThumbnailAtlas task in app/build.gradle and
+ * shipped as the thumbnails.atlas asset:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    cellWidth, cellHeight
+ * int    count
+ * count times, sorted by name:
+ *     UTF    name        the imageFilename of the movie
+ *     int    x, y        the top left corner of its cell
+ * the atlas image as a PNG
+ * </pre>
+ * It is decoded once per process. The rows then only draw their cell out of the shared Bitmap
+ * (see AtlasRegionDrawable), so a thumbnail costs no decode per row and the memory it takes is the
+ * size of the atlas no matter how long the list is. Movies that aren't in the atlas have no thumbnail.
+ */
+public final class ThumbnailAtlas {
+
+    private static final String TAG = "ThumbnailAtlas";
+
+    private static final String ASSET = "thumbnails.atlas";
+    private static final int MAGIC = 0x45474F54; // "EGOT"
+    private static final int VERSION = 1;
+
+    private static ThumbnailAtlas instance;
+
+    private final Bitmap bitmap;
+    private final int cellWidth;
+    private final int cellHeight;
+    private final String[] names;
+    private final int[] xs;
+    private final int[] ys;
+
+    private ThumbnailAtlas(Bitmap bitmap, int cellWidth, int cellHeight, String[] names, int[] xs, int[] ys) {
+        this.bitmap = bitmap;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.names = names;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    // Decodes the atlas the first time it is asked for, null if it couldn't be read.
+    // Must be called on a background thread.
+    public static synchronized ThumbnailAtlas getInstance(Context context) {
+        if (instance == null) {
+            try {
+                instance = load(context.getAssets().open(ASSET));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not load the thumbnail atlas", e);
+            }
+        }
+        return instance;
+    }
+
+    private static ThumbnailAtlas load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (data.readInt() != MAGIC || data.readInt() > VERSION) {
+                throw new IOException("Not a thumbnail atlas this version can read");
+            }
+
+            int cellWidth = data.readInt();
+            int cellHeight = data.readInt();
+            int count = data.readInt();
+
+            String[] names = new String[count];
+            int[] xs = new int[count];
+            int[] ys = new int[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = data.readUTF();
+                xs[i] = data.readInt();
+                ys[i] = data.readInt();
+            }
+
+            // The thumbnails are opaque so 16 bits per pixel are plenty and halve the footprint
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            Bitmap bitmap = BitmapFactory.decodeStream(data, null, options);
+            if (bitmap == null) {
+                throw new IOException("Could not decode the thumbnail atlas");
+            }
+
+            return new ThumbnailAtlas(bitmap, cellWidth, cellHeight, names, xs, ys);
+        } finally {
+            data.close();
+        }
+    }
+
+    // Sets region to the cell of the movie's thumbnail, returns false if the atlas doesn't have one
+    public boolean findRegion(String imageFilename, Rect region) {
+        int i = imageFilename == null ? -1 : Arrays.binarySearch(names, imageFilename);
+        if (i < 0) return false;
+
+        region.set(xs[i], ys[i], xs[i] + cellWidth, ys[i] + cellHeight);
+        return true;
+    }
+
+    // Getters
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public int getCellWidth() {
+        return cellWidth;
+    }
+
+    public int getCellHeight() {
+        return cellHeight;
+    }
+}
@@ -0,0 +1,97 @@
+package com.enhanced.endgameodyssey;
+
+import java.util.Arrays;
+
+/**
+ * The order in which the movies of one timeline are watched, worked out from their timelinePositions
+ * instead of assuming that the catalog has 22 movies whose ids and positions both run from 1 to 22.
+ * <p>
+ * The positions should be unique within the timeline but they don't have to start at 1 or be
+ * contiguous, so a catalog update can insert a movie at 7.5 (position 75 of a catalog counted in tens)
+ * or drop one without renumbering the rest. Every lookup is a binary search over the sorted positions
+ * and takes O(log n) on a catalog of any size. Movies that share a position (a broken catalog feed)
+ * keep the order they were given in, a lookup by that position finds one of them.
+ * <p>
+ * There is one Timeline per catalog, built by the MovieCatalog from all of its movies, so the whole catalog
+ * has one first movie and one finale.
+ * <p>
+ * This is plain Java without any Android classes so it can be unit tested on the JVM (see TimelineTest).
+ */
+public final class Timeline {
+
+    // Returned when there is no such movie, the same value as WatchCommand.NO_MOVIE
+    public static final int NO_MOVIE = -1;
+
+    // Sorted ascending, ids[i] is the movie at positions[i]
+    private final int[] positions;
+    private final int[] ids;
+
+    // ids[i] is the movie at timeline position positions[i], in any order
+    public Timeline(int[] ids, int[] positions) {
+        if (ids.length != positions.length) {
+            throw new IllegalArgumentException("Every movie needs a timeline position");
+        }
+
+        int size = ids.length;
+        this.ids = new int[size];
+        this.positions = new int[size];
+
+        // Sort by position while keeping track of the ids, packed into longs so nothing is boxed.
+        // The position is in the high half so the longs sort by it, the index of the movie is in the low half.
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) positions[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        for (int i = 0; i < size; i++) {
+            int index = (int) order[i];
+            this.ids[i] = ids[index];
+            this.positions[i] = positions[index];
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    // The movie a new run starts with
+    public int getFirstId() {
+        return ids.length == 0 ? NO_MOVIE : ids[0];
+    }
+
+    // The last movie of the timeline, watching it completes the run
+    public int getFinaleId() {
+        return ids.length == 0 ? NO_MOVIE : ids[ids.length - 1];
+    }
+
+    public boolean isFinale(int position) {
+        return ids.length > 0 && position == positions[ids.length - 1];
+    }
+
+    // The movie after the one at position, NO_MOVIE after the finale. position doesn't have to be
+    // the position of a movie, e.g. that of one removed from the catalog in the meantime.
+    public int getNextId(int position) {
+        int index = Arrays.binarySearch(positions, position);
+
+        // binarySearch returns -(insertion point) - 1 for a position that isn't there,
+        // the insertion point is the index of the first movie after it
+        index = index >= 0 ? index + 1 : -index - 1;
+        return index < ids.length ? ids[index] : NO_MOVIE;
+    }
+
+    // The movie before the one at position, NO_MOVIE before the first one
+    public int getPreviousId(int position) {
+        int index = Arrays.binarySearch(positions, position);
+
+        // Either way the movie before is right before where position is or would be
+        index = (index >= 0 ? index : -index - 1) - 1;
+        return index >= 0 ? ids[index] : NO_MOVIE;
+    }
+
+    // Where the movie at position is in the watch order (0 for the first movie), -1 if there is none there
+    public int indexOf(int position) {
+        int index = Arrays.binarySearch(positions, position);
+        return index >= 0 ? index : -1;
+    }
+}
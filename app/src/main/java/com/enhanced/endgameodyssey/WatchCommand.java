@@ -0,0 +1,111 @@
+package com.enhanced.endgameodyssey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single user action on the watch state, such as tapping the watch button in the MovieDetailsFragment.
+ * An action can touch several rows (watching a movie also makes the next one current) but it is
+ * always written, undone and redone as one transaction by the MovieRepository. A command belongs to the
+ * profile that was active when it was made.
+ *
+ * When the command is first executed the repository records its delta: the state of every row it
+ * actually changed, before and after. Undo simply writes the "before" states back and redo writes
+ * the "after" states again, so neither has to reload the movies or work out the inverse of the action.
+ */
+public class WatchCommand {
+
+    public static final int TYPE_WATCH = 1;
+    public static final int TYPE_UNWATCH = 2;
+    public static final int TYPE_SNAP = 3;
+    public static final int TYPE_RESTORE = 4;
+
+    // Used for nextMovieId when there is no movie to set as current
+    public static final int NO_MOVIE = -1;
+
+    private final int profileId;
+    private final int type;
+    private final int movieId;
+    private final int nextMovieId;
+    private int snapshotId;
+
+    // Written once on the background thread that executes the command and only read by the tasks
+    // that run after it on the same MovieDatabase.WRITER, volatile makes sure they see the recorded delta.
+    private volatile List<MovieState> before = new ArrayList<>();
+    private volatile List<MovieState> after = new ArrayList<>();
+
+    private WatchCommand(int profileId, int type, int movieId, int nextMovieId) {
+        this.profileId = profileId;
+        this.type = type;
+        this.movieId = movieId;
+        this.nextMovieId = nextMovieId;
+    }
+
+    // Mark movieId as watched and make nextMovieId the current movie to watch
+    public static WatchCommand watch(int profileId, int movieId, int nextMovieId) {
+        return new WatchCommand(profileId, TYPE_WATCH, movieId, nextMovieId);
+    }
+
+    // Mark movieId as unwatched and make it (and nextMovieId) current again
+    public static WatchCommand unwatch(int profileId, int movieId, int nextMovieId) {
+        return new WatchCommand(profileId, TYPE_UNWATCH, movieId, nextMovieId);
+    }
+
+    // Watch the finale movieId, then reset every movie and start over from firstMovieId
+    public static WatchCommand snap(int profileId, int movieId, int firstMovieId) {
+        return new WatchCommand(profileId, TYPE_SNAP, movieId, firstMovieId);
+    }
+
+    // Bring back the watch state of a completed run (see RunSnapshot)
+    public static WatchCommand restore(int profileId, int snapshotId) {
+        WatchCommand command = new WatchCommand(profileId, TYPE_RESTORE, NO_MOVIE, NO_MOVIE);
+        command.snapshotId = snapshotId;
+        return command;
+    }
+
+    // Keeps only the rows that were actually changed by the command
+    void recordDelta(List<MovieState> statesBefore, List<MovieState> statesAfter) {
+        List<MovieState> changedBefore = new ArrayList<>();
+        List<MovieState> changedAfter = new ArrayList<>();
+
+        // Both lists hold the same ids in the same order so they line up
+        for (int i = 0; i < statesBefore.size(); i++) {
+            if (!statesBefore.get(i).sameAs(statesAfter.get(i))) {
+                changedBefore.add(statesBefore.get(i));
+                changedAfter.add(statesAfter.get(i));
+            }
+        }
+
+        before = changedBefore;
+        after = changedAfter;
+    }
+
+    // Getters
+    public int getProfileId() {
+        return profileId;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public int getNextMovieId() {
+        return nextMovieId;
+    }
+
+    public int getSnapshotId() {
+        return snapshotId;
+    }
+
+    public List<MovieState> getBefore() {
+        return before;
+    }
+
+    public List<MovieState> getAfter() {
+        return after;
+    }
+}
@@ -0,0 +1,74 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * This is the WatchEvent entity which represents a row in the append-only watch history.
+ *
+ * Unlike the Movie entity, whose watched and current fields are overwritten in place, a WatchEvent
+ * is never updated. A new one is inserted in the same transaction as every state change made through
+ * the MovieRepository so we always know what happened and when it happened.
+ *
+ * Old events are folded into one WatchSummary per movie and then deleted (see MovieRepository.compactHistory())
+ * so that the table stays small no matter how many times the user watches and unwatches movies.
+ */
+@Entity(tableName = "watch_event_table", indices = {@Index({"profileId", "timestamp"}), @Index("timestamp")})
+public class WatchEvent {
+
+    // The movie was marked as watched
+    public static final int ACTION_WATCH = 1;
+    // The movie was marked as unwatched
+    public static final int ACTION_UNWATCH = 2;
+    // The movie was set as the current movie to watch
+    public static final int ACTION_SET_CURRENT = 3;
+    // Every movie was marked as unwatched (the snap), movieId is set to ALL_MOVIES
+    public static final int ACTION_RESET = 4;
+    // A completed run was restored from a RunSnapshot, movieId is set to ALL_MOVIES
+    public static final int ACTION_RESTORE = 5;
+
+    // The movieId of events that affect every movie instead of a single one
+    public static final int ALL_MOVIES = 0;
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    private int profileId;
+    private int movieId;
+    private int action;
+    private long timestamp;
+
+    public WatchEvent(int profileId, int movieId, int action, long timestamp) {
+        this.profileId = profileId;
+        this.movieId = movieId;
+        this.action = action;
+        this.timestamp = timestamp;
+    }
+
+    // Setters
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    // Getters
+    public long getId() {
+        return id;
+    }
+
+    public int getProfileId() {
+        return profileId;
+    }
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public int getAction() {
+        return action;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
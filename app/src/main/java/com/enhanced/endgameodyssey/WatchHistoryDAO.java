@@ -0,0 +1,55 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * This is the Data Access Object for the watch history, the WatchEvent and WatchSummary entities.
+ * Events are only ever inserted and deleted, never updated.
+ */
+@Dao
+public interface WatchHistoryDAO {
+
+    // Returns the row id of the new event which we use to decide when to compact (see MovieRepository.logEvent())
+    @Insert
+    long insert(WatchEvent event);
+
+    // Uses the (profileId, timestamp) index so only the profile's events inside the range are read
+    @Query("SELECT * FROM watch_event_table WHERE profileId=:profileId AND timestamp BETWEEN :from AND :to " +
+            "ORDER BY timestamp DESC")
+    LiveData<List<WatchEvent>> getEventsBetween(int profileId, long from, long to);
+
+    @Query("SELECT * FROM watch_summary_table WHERE profileId=:profileId ORDER BY lastWatchedAt DESC")
+    LiveData<List<WatchSummary>> getSummaries(int profileId);
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Compaction
+
+    // The newest event that has fallen out of the retention window, 0 if there is none.
+    // Uses the index on timestamp alone since compaction is done for every profile at once.
+    @Query("SELECT COALESCE(MAX(id), 0) FROM watch_event_table WHERE timestamp < :before")
+    long getLastEventIdBefore(long before);
+
+    // Folds every event up to and including upToId into one summary per profile and movie
+    @Query("SELECT profileId, movieId, " +
+            "SUM(CASE WHEN action = 1 THEN 1 ELSE 0 END) AS watchCount, " +
+            "SUM(CASE WHEN action = 2 OR action = 4 THEN 1 ELSE 0 END) AS unwatchCount, " +
+            "COALESCE(MIN(CASE WHEN action = 1 THEN timestamp END), 0) AS firstWatchedAt, " +
+            "COALESCE(MAX(CASE WHEN action = 1 THEN timestamp END), 0) AS lastWatchedAt " +
+            "FROM watch_event_table WHERE id <= :upToId GROUP BY profileId, movieId")
+    List<WatchSummary> summarizeEventsUpTo(long upToId);
+
+    @Query("SELECT * FROM watch_summary_table WHERE movieId IN (:movieIds)")
+    List<WatchSummary> getSummariesOf(List<Integer> movieIds);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertSummaries(List<WatchSummary> summaries);
+
+    @Query("DELETE FROM watch_event_table WHERE id <= :upToId")
+    void deleteEventsUpTo(long upToId);
+}
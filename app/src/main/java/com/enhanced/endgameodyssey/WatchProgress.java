@@ -0,0 +1,43 @@
+package com.enhanced.endgameodyssey;
+
+/**
+ * The progress of a profile through the timeline, the same numbers the MainActivity shows in its drawer.
+ * Room fills it from WatchStateDAO.getProgress() and the ProgressCache keeps a copy of it in a small file
+ * so the home-screen widget never has to open the database.
+ */
+public class WatchProgress {
+
+    // null if no movie is current
+    private String currentTitle;
+    private int movieCount;
+    private int watchedCount;
+    private int minutesLeft;
+
+    public WatchProgress(String currentTitle, int movieCount, int watchedCount, int minutesLeft) {
+        this.currentTitle = currentTitle;
+        this.movieCount = movieCount;
+        this.watchedCount = watchedCount;
+        this.minutesLeft = minutesLeft;
+    }
+
+    public int getPercent() {
+        return movieCount == 0 ? 0 : (watchedCount * 100) / movieCount;
+    }
+
+    // Getters
+    public String getCurrentTitle() {
+        return currentTitle;
+    }
+
+    public int getMovieCount() {
+        return movieCount;
+    }
+
+    public int getWatchedCount() {
+        return watchedCount;
+    }
+
+    public int getMinutesLeft() {
+        return minutesLeft;
+    }
+}
@@ -0,0 +1,74 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+
+/**
+ * This is the WatchState entity, whether a profile has watched a movie and whether it is the profile's
+ * current movie to watch. The catalog itself is shared by every profile (see CatalogMovie).
+ *
+ * The composite primary key (profileId, movieId) is also the index every state query of a profile goes
+ * through, so switching profiles is an indexed re-query and never copies the catalog.
+ * A row only exists once the profile has touched the movie, a missing row means neither watched nor current.
+ *
+ * For the SyncEngine every row also remembers when it was last changed, which decides a conflict with another
+ * device (last writer wins), and whether the change still has to be sent. The (profileId, dirty) index makes
+ * finding the unsent rows cost as much as there are of them.
+ */
+@Entity(tableName = "watch_state_table",
+        primaryKeys = {"profileId", "movieId"},
+        indices = {@Index("movieId"), @Index({"profileId", "dirty"})})
+public class WatchState {
+
+    private int profileId;
+    private int movieId;
+
+    private boolean watched;
+    private boolean current;
+
+    // In milliseconds since the epoch, on the device that made the change
+    private long updatedAt;
+    // True until the change has been sent to the sync server
+    private boolean dirty;
+
+    public WatchState(int profileId, int movieId, boolean watched, boolean current, long updatedAt, boolean dirty) {
+        this.profileId = profileId;
+        this.movieId = movieId;
+        this.watched = watched;
+        this.current = current;
+        this.updatedAt = updatedAt;
+        this.dirty = dirty;
+    }
+
+    // A change made on this device right now, which has to be synced
+    @Ignore
+    public WatchState(int profileId, int movieId, boolean watched, boolean current) {
+        this(profileId, movieId, watched, current, System.currentTimeMillis(), true);
+    }
+
+    // Getters
+    public int getProfileId() {
+        return profileId;
+    }
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+
+    public boolean isCurrent() {
+        return current;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+}
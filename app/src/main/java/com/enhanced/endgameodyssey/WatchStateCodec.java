@@ -0,0 +1,106 @@
+package com.enhanced.endgameodyssey;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Packs the watched flag of every movie, in timeline order, into as few bytes as possible.
+ *
+ * The first byte tells which of the two encodings follows:
+ * <p>
+ * FORMAT_BITS is a plain bitset, one bit per movie (bit i of the catalog is bit i % 8 of byte i / 8).
+ * <p>
+ * FORMAT_RUNS is a list of run lengths written as varints, alternating between unwatched and watched
+ * runs and always starting with an unwatched one (which may be empty). Since a user watches the movies
+ * in order, a completed or partly completed run is only one or two runs long and takes a few bytes
+ * no matter how many titles are in the catalog.
+ * <p>
+ * encode() picks whichever of the two is smaller so the worst case is still one bit per movie.
+ */
+public final class WatchStateCodec {
+
+    private static final byte FORMAT_BITS = 0;
+    private static final byte FORMAT_RUNS = 1;
+
+    private WatchStateCodec() {
+    }
+
+    public static byte[] encode(boolean[] watched) {
+        byte[] bits = new byte[1 + (watched.length + 7) / 8];
+        bits[0] = FORMAT_BITS;
+        for (int i = 0; i < watched.length; i++) {
+            if (watched[i]) {
+                bits[1 + i / 8] |= 1 << (i % 8);
+            }
+        }
+
+        ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        runs.write(FORMAT_RUNS);
+
+        boolean value = false;
+        int runLength = 0;
+        for (boolean flag : watched) {
+            if (flag != value) {
+                writeVarInt(runs, runLength);
+                value = flag;
+                runLength = 0;
+
+                // No point in finishing the runs if they are already larger than the bitset
+                if (runs.size() >= bits.length) return bits;
+            }
+            runLength++;
+        }
+        writeVarInt(runs, runLength);
+
+        return runs.size() < bits.length ? runs.toByteArray() : bits;
+    }
+
+    // Decodes the watched flags of the first count movies. Movies that were not in the catalog
+    // when the state was encoded are returned as unwatched.
+    public static boolean[] decode(byte[] data, int count) {
+        boolean[] watched = new boolean[count];
+        if (data == null || data.length == 0) return watched;
+
+        if (data[0] == FORMAT_BITS) {
+            int available = Math.min(count, (data.length - 1) * 8);
+            for (int i = 0; i < available; i++) {
+                watched[i] = (data[1 + i / 8] & (1 << (i % 8))) != 0;
+            }
+            return watched;
+        }
+
+        int[] offset = {1};
+        boolean value = false;
+        int index = 0;
+        while (offset[0] < data.length && index < count) {
+            int runLength = readVarInt(data, offset);
+            int end = Math.min(count, index + runLength);
+            for (; index < end; index++) {
+                watched[index] = value;
+            }
+            value = !value;
+        }
+        return watched;
+    }
+
+    // Writes 7 bits per byte, the high bit is set on every byte except the last one
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // offset is an array so it can be advanced for the caller
+    private static int readVarInt(byte[] data, int[] offset) {
+        int value = 0;
+        int shift = 0;
+        while (offset[0] < data.length) {
+            byte b = data[offset[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+            shift += 7;
+        }
+        return value;
+    }
+}
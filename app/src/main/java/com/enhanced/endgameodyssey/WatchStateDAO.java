@@ -0,0 +1,99 @@
+package com.enhanced.endgameodyssey;
+
+import android.database.Cursor;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * This is the Data Access Object for the WatchState entity, the per-profile watched and current flags.
+ * Every query goes through the (profileId, movieId) primary key.
+ */
+@Dao
+public interface WatchStateDAO {
+
+    // Overwrites (or creates) the watch state of one movie for one profile
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void setState(WatchState state);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void setStates(List<WatchState> states);
+
+    // Reset all of the profile's movies to not watched. Only the watched rows are touched so only they are synced.
+    @Query("UPDATE watch_state_table SET watched=0, updatedAt=:now, dirty=1 WHERE profileId=:profileId AND watched=1")
+    void unwatchAllMovies(int profileId, long now);
+
+    // The watch state of the given movies, ordered by id
+    @Query("SELECT m.id, COALESCE(s.watched, 0) AS watched, COALESCE(s.current, 0) AS current " +
+            "FROM movie_table m LEFT JOIN watch_state_table s ON s.movieId = m.id AND s.profileId = :profileId " +
+            "WHERE m.id IN (:ids) ORDER BY m.id ASC")
+    List<MovieState> getStates(int profileId, List<Integer> ids);
+
+    // The watch state of every movie in timeline order, used to take and restore a RunSnapshot
+    @Query("SELECT m.id, COALESCE(s.watched, 0) AS watched, COALESCE(s.current, 0) AS current " +
+            "FROM movie_table m LEFT JOIN watch_state_table s ON s.movieId = m.id AND s.profileId = :profileId " +
+            "ORDER BY m.timelinePosition ASC")
+    List<MovieState> getOrderedStates(int profileId);
+
+    // The ids of every movie that is either watched or current, the only rows a reset can change
+    @Query("SELECT movieId FROM watch_state_table WHERE profileId=:profileId AND (watched=1 OR current=1)")
+    List<Integer> getActiveMovieIds(int profileId);
+
+    @Query("SELECT COUNT(*) FROM watch_state_table WHERE profileId=:profileId AND current=1")
+    int getCurrentMovieCount(int profileId);
+
+    // null if the profile has watched every movie
+    @Query("SELECT m.id FROM movie_table m LEFT JOIN watch_state_table s ON s.movieId = m.id AND s.profileId = :profileId " +
+            "WHERE COALESCE(s.watched, 0) = 0 ORDER BY m.timelinePosition ASC LIMIT 1")
+    Integer getFirstUnwatchedMovieId(int profileId);
+
+    // Every WatchState row of the profile, read by the MovieStream straight into the bits of a MovieList
+    @Query("SELECT movieId, watched, current FROM watch_state_table WHERE profileId=:profileId")
+    Cursor getStateCursor(int profileId);
+
+    // The ids of the movies the profile has (or hasn't) watched, for the Watched and Unwatched tabs (see MovieFilter).
+    // A movie without a WatchState row hasn't been watched.
+    @Query("SELECT m.id FROM movie_table m LEFT JOIN watch_state_table s ON s.movieId = m.id AND s.profileId = :profileId " +
+            "WHERE COALESCE(s.watched, 0) = :watched")
+    Cursor getMovieIdsByWatched(int profileId, boolean watched);
+
+    // Everything the progress widget shows in one pass over the catalog, see ProgressCache
+    @Query("SELECT (SELECT cm.title FROM movie_table cm JOIN watch_state_table cs ON cs.movieId = cm.id " +
+            "WHERE cs.profileId = :profileId AND cs.current = 1 LIMIT 1) AS currentTitle, " +
+            "COUNT(*) AS movieCount, SUM(COALESCE(s.watched, 0)) AS watchedCount, " +
+            "SUM(CASE WHEN COALESCE(s.watched, 0) = 0 THEN m.runtimeMinutes ELSE 0 END) AS minutesLeft " +
+            "FROM movie_table m LEFT JOIN watch_state_table s ON s.movieId = m.id AND s.profileId = :profileId")
+    WatchProgress getProgress(int profileId);
+
+    // null if the profile has never touched the movie
+    @Query("SELECT * FROM watch_state_table WHERE profileId=:profileId AND movieId=:movieId")
+    WatchState getState(int profileId, int movieId);
+
+    // The profile's current movies, the most recently changed first. Normally there is only one,
+    // but merging synced changes can briefly leave more.
+    @Query("SELECT * FROM watch_state_table WHERE profileId=:profileId AND current=1 ORDER BY updatedAt DESC")
+    List<WatchState> getCurrentStates(int profileId);
+
+    // One batch of the profile's unsynced changes, keyed by the catalog key since ids differ between devices.
+    // Paged on movieId so a row that is changed again while a batch is in flight can't be sent twice in one sync.
+    @Query("SELECT s.movieId, m.imageFilename AS `key`, s.watched, s.current, s.updatedAt " +
+            "FROM watch_state_table s JOIN movie_table m ON m.id = s.movieId " +
+            "WHERE s.profileId=:profileId AND s.dirty=1 AND s.movieId > :afterMovieId ORDER BY s.movieId ASC LIMIT :limit")
+    List<SyncChange> getDirtyChanges(int profileId, int afterMovieId, int limit);
+
+    // Marks a sent change as synced, unless the row was changed again after it was read
+    @Query("UPDATE watch_state_table SET dirty=0 WHERE profileId=:profileId AND movieId=:movieId AND updatedAt=:updatedAt")
+    void clearDirty(int profileId, int movieId, long updatedAt);
+
+    // Used when a movie is removed from the catalog
+    @Query("DELETE FROM watch_state_table WHERE movieId=:movieId")
+    void deleteStatesOfMovie(int movieId);
+
+    // Used when a backup replaces the profile's progress
+    @Query("DELETE FROM watch_state_table WHERE profileId=:profileId")
+    void deleteStatesOfProfile(int profileId);
+}
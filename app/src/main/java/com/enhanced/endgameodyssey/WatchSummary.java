@@ -0,0 +1,76 @@
+package com.enhanced.endgameodyssey;
+
+import androidx.room.Entity;
+
+/**
+ * This is the WatchSummary entity. It holds everything we still want to know about the
+ * WatchEvents of a movie after they have been compacted away: how many times it was watched and unwatched,
+ * and when it was first and last watched.
+ *
+ * There is at most one summary per profile and movie (plus one per profile for WatchEvent.ALL_MOVIES which
+ * counts the resets in its unwatchCount) so this table can never grow larger than the catalog times the profiles.
+ */
+@Entity(tableName = "watch_summary_table", primaryKeys = {"profileId", "movieId"})
+public class WatchSummary {
+
+    private int profileId;
+    private int movieId;
+
+    private int watchCount;
+    private int unwatchCount;
+
+    // 0 if the movie has never been watched
+    private long firstWatchedAt;
+    private long lastWatchedAt;
+
+    public WatchSummary(int profileId, int movieId, int watchCount, int unwatchCount, long firstWatchedAt, long lastWatchedAt) {
+        this.profileId = profileId;
+        this.movieId = movieId;
+        this.watchCount = watchCount;
+        this.unwatchCount = unwatchCount;
+        this.firstWatchedAt = firstWatchedAt;
+        this.lastWatchedAt = lastWatchedAt;
+    }
+
+    public boolean isSummaryOf(int profileId, int movieId) {
+        return this.profileId == profileId && this.movieId == movieId;
+    }
+
+    // Adds the counts and timestamps of another summary of the same profile and movie into this one.
+    // Used when folding freshly compacted events into the summary that is already stored.
+    public void merge(WatchSummary other) {
+        watchCount += other.watchCount;
+        unwatchCount += other.unwatchCount;
+
+        if (firstWatchedAt == 0 || (other.firstWatchedAt != 0 && other.firstWatchedAt < firstWatchedAt)) {
+            firstWatchedAt = other.firstWatchedAt;
+        }
+
+        lastWatchedAt = Math.max(lastWatchedAt, other.lastWatchedAt);
+    }
+
+    // Getters
+    public int getProfileId() {
+        return profileId;
+    }
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public int getWatchCount() {
+        return watchCount;
+    }
+
+    public int getUnwatchCount() {
+        return unwatchCount;
+    }
+
+    public long getFirstWatchedAt() {
+        return firstWatchedAt;
+    }
+
+    public long getLastWatchedAt() {
+        return lastWatchedAt;
+    }
+}
@@ -0,0 +1,110 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upgrades a database of the first released version (5) to the current one with the MovieMigrations, on the
+ * development machine (host) with Robolectric. Room fails the open if any table doesn't end up like its entity.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MovieDatabaseMigrationTest {
+
+    private static final String NAME = "movie_database_migration";
+
+    private static final String DESCRIPTION = "Steve Rogers becomes Captain America. He must stop Hydra before it is too late.";
+
+    private Context context;
+    private MovieDatabase database;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(NAME);
+
+        // The movie_table of version 5: 22 movies, the last 7 of the timeline watched and the one before them current
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(NAME), null);
+        db.execSQL("CREATE TABLE `movie_table` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `title` TEXT, " +
+                "`description` TEXT, `imageFilename` TEXT, `releaseDate` TEXT, `runtimeMinutes` INTEGER NOT NULL, " +
+                "`timelinePosition` INTEGER NOT NULL, `rating` REAL NOT NULL, `watched` INTEGER NOT NULL, " +
+                "`current` INTEGER NOT NULL)");
+        for (int i = 1; i <= 22; i++) {
+            db.execSQL("INSERT INTO `movie_table` (`title`, `description`, `imageFilename`, `releaseDate`, " +
+                            "`runtimeMinutes`, `timelinePosition`, `rating`, `watched`, `current`) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    new Object[]{"Movie " + i, DESCRIPTION, "movie" + i, "01/01/2011", 120, i, 7.5f,
+                            i > 15 ? 1 : 0, i == 15 ? 1 : 0});
+        }
+        db.setVersion(5);
+        db.close();
+
+        database = MovieDatabase.configure(context, Room.databaseBuilder(context, MovieDatabase.class, NAME))
+                .allowMainThreadQueries()
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(NAME);
+    }
+
+    @Test
+    public void upgradeFromTheFirstRelease_keepsTheCatalogAndTheProgress() {
+        assertEquals(22, database.movieDAO().getMovieCount());
+        assertEquals(1, database.profileDAO().getProfileIds().size());
+        assertEquals(Profile.DEFAULT_PROFILE_ID, (int) database.profileDAO().getProfileIds().get(0));
+
+        List<Movie> movies = database.movieDAO().getMoviesAfter(Profile.DEFAULT_PROFILE_ID, 0, 100);
+        assertEquals(22, movies.size());
+        for (int i = 0; i < movies.size(); i++) {
+            Movie movie = movies.get(i);
+            assertEquals("Movie " + (i + 1), movie.getTitle());
+            assertEquals(i + 1 > 15, movie.isWatched());
+            assertEquals(i + 1 == 15, movie.isCurrent());
+        }
+
+        // The progress from before the sync is pushed by the first one
+        List<WatchState> current = database.watchStateDAO().getCurrentStates(Profile.DEFAULT_PROFILE_ID);
+        assertEquals(1, current.size());
+        assertTrue(current.get(0).isDirty());
+        assertTrue(current.get(0).getUpdatedAt() > 0);
+    }
+
+    @Test
+    public void upgradeFromTheFirstRelease_encodesTheDescriptions() {
+        Cursor cursor = database.movieDAO().getCatalogCursor();
+        try {
+            int synopsis = cursor.getColumnIndexOrThrow("synopsis");
+            int deflated = cursor.getColumnIndexOrThrow("descriptionDeflated");
+            assertEquals(22, cursor.getCount());
+            while (cursor.moveToNext()) {
+                assertEquals("Steve Rogers becomes Captain America.", cursor.getString(synopsis));
+                assertEquals(DESCRIPTION, DescriptionCodec.inflate(cursor.getBlob(deflated)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void upgradedDatabase_takesNewMoviesWithTheirKeys() {
+        database.movieDAO().insert(new CatalogMovie("Movie 23", DESCRIPTION, "movie23", "01/01/2019", 120, 23, 8f));
+
+        assertEquals(23, database.movieDAO().getMovieCount());
+        assertNotNull(database.movieDAO().getIdByKey("movie23"));
+    }
+}
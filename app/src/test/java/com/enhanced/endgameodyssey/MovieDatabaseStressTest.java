@@ -0,0 +1,344 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteException;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress test of the MovieDatabase, run on the development machine (host) with Robolectric.
+ * <p>
+ * Opens the database with the configuration of the app (MovieDatabase.configure()) and has READERS threads
+ * query the catalog and the watch states the way the MovieStream and the widget do while an import, the merges
+ * of a sync and the watch actions of the UI all write through the MovieDatabase.WRITER. Prints the throughput and the latency percentiles of the reads
+ * and of the write transactions, and fails on any SQLITE_BUSY, on a read that saw half of a transaction and
+ * on a write that got lost.
+ * <p>
+ * Robolectric runs SQLite in the JVM and hands every statement to it one at a time, so the numbers are only
+ * good for comparing two runs of this test with each other, not for what a device does.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MovieDatabaseStressTest {
+
+    private static final String NAME = "movie_database_stress";
+
+    private static final int READERS = 4;
+
+    // The import: chunks of the size the CatalogImporter writes, each in a transaction of its own
+    private static final int IMPORT_CHUNKS = 25;
+    private static final int CHUNK_SIZE = 2000;
+
+    // The sync and the watch actions: many small transactions in between the chunks
+    private static final int SMALL_WRITES = 200;
+
+    // The watch states a sync merges in one transaction
+    private static final int MERGE_SIZE = 5;
+
+    private static final int SEEDED = 22;
+
+    private MovieDatabase database;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(NAME);
+        database = MovieDatabase.configure(context, Room.databaseBuilder(context, MovieDatabase.class, NAME)).build();
+
+        // Room doesn't allow queries on the main thread, which is the thread of the test
+        write(new Runnable() {
+            @Override
+            public void run() {
+                database.movieDAO().insertNew(movies("seed", SEEDED));
+            }
+        }).await(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        ApplicationProvider.getApplicationContext().deleteDatabase(NAME);
+    }
+
+    @Test
+    public void readersKeepReadingWhileEverythingWrites() throws Exception {
+        assertTrue(database.getOpenHelper().getWritableDatabase().isWriteAheadLoggingEnabled());
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger busy = new AtomicInteger();
+        final AtomicInteger torn = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Readers
+        final Latencies[] reads = new Latencies[READERS];
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; r++) {
+            final Latencies latencies = reads[r] = new Latencies();
+            final boolean countOnly = r % 2 == 0;
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (writing.get()) {
+                        long start = System.nanoTime();
+                        try {
+                            if (countOnly) {
+                                // The sync and the watch actions don't add movies, so anything between two
+                                // chunks is a chunk that was seen half written
+                                int count = database.movieDAO().getMovieCount();
+                                if ((count - SEEDED) % CHUNK_SIZE != 0) {
+                                    torn.incrementAndGet();
+                                }
+                            } else {
+                                readMovies();
+                            }
+                        } catch (SQLiteException e) {
+                            if (isBusy(e)) busy.incrementAndGet();
+                            else failure.compareAndSet(null, e);
+                        }
+                        latencies.add(System.nanoTime() - start);
+                    }
+                }
+            }, "reader-" + r);
+        }
+
+        long start = System.nanoTime();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+
+        // Writers. Each one asks for its writes from a thread of its own, as the ImportCatalogAsyncTask, the
+        // SyncAsyncTask and the main thread would, and the WRITER runs them one after the other.
+        final Latencies writes = new Latencies();
+        final CountDownLatch done = new CountDownLatch(IMPORT_CHUNKS + 2 * SMALL_WRITES);
+
+        Thread importer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int c = 0; c < IMPORT_CHUNKS; c++) {
+                    final List<CatalogMovie> chunk = movies("import-" + c + "-", CHUNK_SIZE);
+                    writeTimed(writes, busy, failure, done, new Runnable() {
+                        @Override
+                        public void run() {
+                            database.movieDAO().insertNew(chunk);
+                        }
+                    });
+                }
+            }
+        }, "importer");
+
+        // A merge of the SyncEngine: a few remote changes, already synced so they are clean
+        Thread sync = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < SMALL_WRITES; i++) {
+                    final int merge = i;
+                    writeTimed(writes, busy, failure, done, new Runnable() {
+                        @Override
+                        public void run() {
+                            List<WatchState> states = new ArrayList<>(MERGE_SIZE);
+                            for (int m = 0; m < MERGE_SIZE; m++) {
+                                int movieId = database.movieDAO().getIdByKey("seed" + ((merge + m) % SEEDED));
+                                states.add(new WatchState(Profile.DEFAULT_PROFILE_ID, movieId, merge % 2 == 0, false,
+                                        System.currentTimeMillis(), false));
+                            }
+                            database.watchStateDAO().setStates(states);
+                        }
+                    });
+                }
+            }
+        }, "sync");
+
+        // A watch action of the user: one movie watched or unwatched
+        Thread ui = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < SMALL_WRITES; i++) {
+                    final int action = i;
+                    writeTimed(writes, busy, failure, done, new Runnable() {
+                        @Override
+                        public void run() {
+                            int movieId = database.movieDAO().getIdByKey("seed" + (action % SEEDED));
+                            database.watchStateDAO().setState(new WatchState(Profile.DEFAULT_PROFILE_ID, movieId,
+                                    action / SEEDED % 2 == 0, false));
+                        }
+                    });
+                }
+            }
+        }, "ui");
+
+        importer.start();
+        sync.start();
+        ui.start();
+
+        boolean finished = done.await(10, TimeUnit.MINUTES);
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Latencies allReads = new Latencies();
+        for (Latencies latencies : reads) {
+            allReads.addAll(latencies);
+        }
+
+        System.out.println(String.format("MovieDatabase stress: %d readers, %d write transactions, %.1f s",
+                READERS, IMPORT_CHUNKS + 2 * SMALL_WRITES, seconds));
+        System.out.println(String.format("  reads   %8.0f/s  %s", allReads.size() / seconds, allReads));
+        System.out.println(String.format("  writes  %8.0f/s  %s", writes.size() / seconds, writes));
+        System.out.println(String.format("  rows imported %.0f/s, SQLITE_BUSY %d, torn reads %d",
+                IMPORT_CHUNKS * CHUNK_SIZE / seconds, busy.get(), torn.get()));
+
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertTrue("The writes didn't finish", finished);
+        assertEquals("SQLITE_BUSY", 0, busy.get());
+        assertEquals("Reads that saw half of a chunk", 0, torn.get());
+        assertTrue("The readers never got to read", allReads.size() > READERS);
+
+        final int[] count = new int[1];
+        write(new Runnable() {
+            @Override
+            public void run() {
+                count[0] = database.movieDAO().getMovieCount();
+            }
+        }).await(30, TimeUnit.SECONDS);
+        assertEquals(SEEDED + IMPORT_CHUNKS * CHUNK_SIZE, count[0]);
+    }
+
+    // Reads the whole catalog like the MovieCatalog does and then the profile's watch states like the MovieStream
+    // does. Not checked for torn reads, the cursor reads a table this big in several windows and each of them can
+    // see a later commit.
+    private int readMovies() {
+        int count = 0;
+        Cursor cursor = database.movieDAO().getCatalogCursor();
+        try {
+            int title = cursor.getColumnIndexOrThrow("title");
+            while (cursor.moveToNext()) {
+                cursor.getString(title);
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        cursor = database.watchStateDAO().getStateCursor(Profile.DEFAULT_PROFILE_ID);
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getInt(1);
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    private void writeTimed(final Latencies latencies, final AtomicInteger busy, final AtomicReference<Throwable> failure,
+                            final CountDownLatch done, final Runnable transaction) {
+        final long queued = System.nanoTime();
+        MovieDatabase.WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    database.runInTransaction(transaction);
+                } catch (SQLiteException e) {
+                    if (isBusy(e)) busy.incrementAndGet();
+                    else failure.compareAndSet(null, e);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    // From the moment it was asked for, so the time spent queued behind the import counts too
+                    latencies.add(System.nanoTime() - queued);
+                    done.countDown();
+                }
+            }
+        });
+    }
+
+    private CountDownLatch write(final Runnable transaction) {
+        final CountDownLatch done = new CountDownLatch(1);
+        MovieDatabase.WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    database.runInTransaction(transaction);
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        return done;
+    }
+
+    private static boolean isBusy(SQLiteException e) {
+        return e instanceof SQLiteDatabaseLockedException
+                || (e.getMessage() != null && e.getMessage().contains("SQLITE_BUSY"));
+    }
+
+    private static List<CatalogMovie> movies(String keyPrefix, int count) {
+        List<CatalogMovie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            movies.add(new CatalogMovie("Movie " + keyPrefix + i, "A hero must stop a powerful villain.",
+                    keyPrefix + i, "01/01/2019", 120, SEEDED + i + 1, 7.5f));
+        }
+        return movies;
+    }
+
+    // The latencies of one kind of operation, in nanoseconds
+    private static class Latencies {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (size == 0) return "none";
+
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return String.format("p50 %.2f ms  p95 %.2f ms  p99 %.2f ms  max %.2f ms",
+                    percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), sorted[size - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, int percent) {
+            int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.enhanced.endgameodyssey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static com.enhanced.endgameodyssey.TestCatalogs.*;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the RemainingRuntime, built and then kept in step with random watch actions, against summing the
+ * rest of the list the slow way (brute force). Runs on the development machine (host) with Robolectric for
+ * the MovieCatalog.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RemainingRuntimeTest {
+
+    private static final int CATALOGS = 200;
+    private static final int ACTIONS = 50;
+
+    @Test
+    public void newTree_sumsTheUnwatchedMoviesToTheFinale() {
+        Random random = new Random(45);
+
+        for (int c = 0; c < CATALOGS; c++) {
+            MovieList movies = randomMovies(random, randomCatalog(random));
+            assertSums(movies, new RemainingRuntime(movies));
+        }
+    }
+
+    @Test
+    public void update_isTheSameAsBuildingANewTree() {
+        Random random = new Random(46);
+
+        for (int c = 0; c < CATALOGS; c++) {
+            MovieCatalog catalog = randomCatalog(random);
+            MovieList movies = randomMovies(random, catalog);
+            RemainingRuntime remaining = new RemainingRuntime(movies);
+
+            for (int a = 0; a < ACTIONS && catalog.size() > 0; a++) {
+                MovieList newMovies = randomAction(random, movies);
+                remaining.update(movies, newMovies);
+                movies = newMovies;
+
+                assertSums(movies, remaining);
+            }
+        }
+    }
+
+    @Test
+    public void emptyCatalog_hasNothingLeft() {
+        RemainingRuntime remaining = new RemainingRuntime(
+                new MovieList(catalog(new int[0]), new BitSet(), new BitSet()));
+
+        assertEquals(0, remaining.getTotal());
+        assertEquals(0, remaining.from(0));
+    }
+
+    private static void assertSums(MovieList movies, RemainingRuntime remaining) {
+        MovieCatalog catalog = movies.getCatalog();
+
+        // From the finale backwards, so each sum is the one after it plus a movie
+        long expected = 0;
+        assertEquals(0, remaining.from(catalog.size()));
+        for (int i = catalog.size() - 1; i >= 0; i--) {
+            if (!movies.isWatched(i)) expected += catalog.getRuntimeMinutes(i);
+            assertEquals("From " + i, expected, remaining.from(i));
+        }
+        assertEquals(expected, remaining.getTotal());
+    }
+}
@@ -0,0 +1,125 @@
+package com.enhanced.endgameodyssey;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static com.enhanced.endgameodyssey.TestCatalogs.*;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the SessionPlan, and every update() of it, against a plan made the slow way (brute force) over random
+ * catalogs and random watch actions. Runs on the development machine (host) with Robolectric for the MovieCatalog.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SessionPlanTest {
+
+    private static final int CATALOGS = 200;
+    private static final int ACTIONS = 50;
+
+    private static final int[] BUDGETS = {60, 90, 120, 180, 240, 400};
+
+    @Test
+    public void of_isTheGreedyPlan() {
+        Random random = new Random(44);
+
+        for (int c = 0; c < CATALOGS; c++) {
+            MovieList movies = randomMovies(random, randomCatalog(random));
+            int budget = BUDGETS[random.nextInt(BUDGETS.length)];
+
+            assertPlan(movies, budget, SessionPlan.of(movies, budget));
+        }
+    }
+
+    @Test
+    public void update_isTheSameAsPlanningFromScratch() {
+        Random random = new Random(45);
+
+        for (int c = 0; c < CATALOGS; c++) {
+            MovieCatalog catalog = randomCatalog(random);
+            MovieList movies = randomMovies(random, catalog);
+            int budget = BUDGETS[random.nextInt(BUDGETS.length)];
+            SessionPlan plan = SessionPlan.of(movies, budget);
+
+            for (int a = 0; a < ACTIONS && catalog.size() > 0; a++) {
+                movies = randomAction(random, movies);
+
+                // Now and then the user picks another session length
+                if (random.nextInt(10) == 0) {
+                    budget = BUDGETS[random.nextInt(BUDGETS.length)];
+                }
+
+                plan = plan.update(movies, budget);
+                assertPlan(movies, budget, plan);
+            }
+        }
+    }
+
+    @Test
+    public void sessionsFrom_isTheGreedyPlanFromThere() {
+        Random random = new Random(46);
+
+        for (int c = 0; c < CATALOGS; c++) {
+            MovieList movies = randomMovies(random, randomCatalog(random));
+            int budget = BUDGETS[random.nextInt(BUDGETS.length)];
+            SessionPlan plan = SessionPlan.of(movies, budget);
+
+            for (int i = 0; i <= movies.getCatalog().size(); i++) {
+                assertEquals("From " + i, bruteForce(movies, budget, i).size(), plan.sessionsFrom(i));
+            }
+        }
+    }
+
+    @Test
+    public void aMovieLongerThanTheBudget_getsASessionOfItsOwn() {
+        MovieList movies = new MovieList(catalog(new int[]{100, 200, 50, 60}), new BitSet(), new BitSet());
+        SessionPlan plan = SessionPlan.of(movies, 180);
+
+        assertEquals(3, plan.size());
+        assertEquals(1, plan.getMovieCount(0));
+        assertEquals(1, plan.getFirstIndex(1));
+        assertEquals(200, plan.getMinutes(1));
+        assertEquals(2, plan.getMovieCount(2));
+        assertEquals(110, plan.getMinutes(2));
+    }
+
+    private static void assertPlan(MovieList movies, int budget, SessionPlan plan) {
+        List<int[]> expected = bruteForce(movies, budget, 0);
+
+        assertEquals(budget, plan.getBudgetMinutes());
+        assertEquals(expected.size(), plan.size());
+        for (int s = 0; s < expected.size(); s++) {
+            int[] session = expected.get(s);
+            assertEquals("Start of session " + s, session[0], plan.getFirstIndex(s));
+            assertEquals("End of session " + s, session[1], plan.getLastIndex(s));
+            assertEquals("Movies of session " + s, session[2], plan.getMovieCount(s));
+            assertEquals("Minutes of session " + s, session[3], plan.getMinutes(s));
+        }
+    }
+
+    // The sessions of the unwatched movies from the index on as {first index, last index, movies, minutes}
+    private static List<int[]> bruteForce(MovieList movies, int budget, int from) {
+        MovieCatalog catalog = movies.getCatalog();
+        List<int[]> sessions = new ArrayList<>();
+        int[] session = null;
+
+        for (int i = from; i < catalog.size(); i++) {
+            if (movies.isWatched(i)) continue;
+
+            int runtime = catalog.getRuntimeMinutes(i);
+            if (session == null || session[3] + runtime > budget) {
+                session = new int[]{i, i, 0, 0};
+                sessions.add(session);
+            }
+            session[1] = i;
+            session[2]++;
+            session[3] += runtime;
+        }
+        return sessions;
+    }
+}
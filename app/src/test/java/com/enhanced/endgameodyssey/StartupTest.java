@@ -0,0 +1,107 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Replays the cold start of the app, SplashActivity then MainActivity, with Robolectric on the development
+ * machine (host) and fails when a phase of the StartupTrace is reached later than its budget.
+ * <p>
+ * The database, the MovieStream and the other background work run on real threads (the looper is paused so
+ * they can), only the main thread is driven by the test. The budgets are in milliseconds on the JVM since the
+ * splash and are there to catch a start that got slower, e.g. a query or a decode that ended up on the main
+ * thread: a device is slower and has its own numbers in the startup.trace file.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class StartupTest {
+
+    private static final long[] BUDGETS = new long[StartupTrace.getPhaseCount()];
+
+    static {
+        BUDGETS[StartupTrace.SPLASH] = 0;
+        BUDGETS[StartupTrace.MAIN_CREATE] = 1500;
+        BUDGETS[StartupTrace.DB_OPEN] = 2500;
+        BUDGETS[StartupTrace.FIRST_EMISSION] = 3000;
+        BUDGETS[StartupTrace.FIRST_FRAME] = 4000;
+        BUDGETS[StartupTrace.FULLY_DRAWN] = 4500;
+    }
+
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    // The time of one frame, by which the main looper is moved on so the Choreographer draws
+    private static final long FRAME_MILLIS = 16;
+
+    // The clock of the JVM, Robolectric's SystemClock only moves when the looper is moved on
+    private static final StartupTrace.Clock CLOCK = new StartupTrace.Clock() {
+        @Override
+        public long uptimeMillis() {
+            return System.nanoTime() / 1000000;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        // The first launch after the install: the database is created and seeded during the start
+        Context context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase("movie_database");
+    }
+
+    @Test
+    public void coldStart_reachesEveryPhaseWithinItsBudget() throws Exception {
+        // The process "starts" with the splash, the JVM has been up for a while
+        StartupTrace.begin(CLOCK, CLOCK.uptimeMillis());
+
+        ActivityController<SplashActivity> splash = Robolectric.buildActivity(SplashActivity.class).setup();
+        Intent next = shadowOf(splash.get()).getNextStartedActivity();
+        assertNotNull("The splash didn't start the MainActivity", next);
+        assertEquals(MainActivity.class.getName(), next.getComponent().getClassName());
+
+        ActivityController<MainActivity> main = Robolectric.buildActivity(MainActivity.class, next).setup();
+
+        // The main thread only runs when it is told to, the rest of the start is on the background threads
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (!StartupTrace.isFinished() && System.nanoTime() < deadline) {
+            shadowOf(Looper.getMainLooper()).idleFor(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+            Thread.sleep(1);
+        }
+
+        StringBuilder report = new StringBuilder("Cold start on the JVM, ms since the splash:");
+        long splashMark = StartupTrace.getMark(StartupTrace.SPLASH);
+        for (int phase = 0; phase < StartupTrace.getPhaseCount(); phase++) {
+            long mark = StartupTrace.getMark(phase);
+            report.append(String.format("%n  %-15s %6s  (budget %d)", StartupTrace.getName(phase),
+                    mark < 0 ? "-" : String.valueOf(mark - splashMark), BUDGETS[phase]));
+        }
+        System.out.println(report);
+
+        assertTrue("The start never finished\n" + report, StartupTrace.isFinished());
+        for (int phase = 0; phase < StartupTrace.getPhaseCount(); phase++) {
+            long mark = StartupTrace.getMark(phase);
+            assertTrue(StartupTrace.getName(phase) + " wasn't reached\n" + report, mark >= 0);
+            assertTrue(StartupTrace.getName(phase) + " is over its budget\n" + report,
+                    mark - splashMark <= BUDGETS[phase]);
+        }
+
+        // A fresh database is opened before its first rows can be emitted
+        assertTrue(StartupTrace.getMark(StartupTrace.DB_OPEN) <= StartupTrace.getMark(StartupTrace.FIRST_EMISSION));
+
+        main.pause().stop().destroy();
+    }
+}
@@ -0,0 +1,169 @@
+package com.enhanced.endgameodyssey;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Syncs two devices, each with a MovieDatabase and a SyncEngine of its own, through one LocalSyncServer on
+ * the development machine (host) with Robolectric.
+ * <p>
+ * The devices have the same catalog inserted in opposite orders, so the same movie has another id on each
+ * and only the keys match, and the same profile under another id, as two installs would.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SyncEngineTest {
+
+    private static final String NAME_A = "movie_database_sync_a";
+    private static final String NAME_B = "movie_database_sync_b";
+
+    // More than one batch of the SyncEngine
+    private static final int MOVIES = 450;
+
+    private static final String PROFILE = "Me";
+    private static final int PROFILE_A = 1;
+    private static final int PROFILE_B = 2;
+
+    private Context context;
+    private MovieDatabase databaseA;
+    private MovieDatabase databaseB;
+    private SyncEngine syncA;
+    private SyncEngine syncB;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(NAME_A);
+        context.deleteDatabase(NAME_B);
+        // The server versions the devices last saw
+        context.getSharedPreferences("sync", Context.MODE_PRIVATE).edit().clear().commit();
+
+        databaseA = open(NAME_A, PROFILE_A, false);
+        databaseB = open(NAME_B, PROFILE_B, true);
+
+        LocalSyncServer server = new LocalSyncServer();
+        syncA = new SyncEngine(context, databaseA, server);
+        syncB = new SyncEngine(context, databaseB, server);
+    }
+
+    @After
+    public void tearDown() {
+        databaseA.close();
+        databaseB.close();
+        context.deleteDatabase(NAME_A);
+        context.deleteDatabase(NAME_B);
+    }
+
+    @Test
+    public void sync_pushesTheChangesOfOneDeviceAndPullsThemOnTheOther() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            setState(databaseA, PROFILE_A, "movie" + i, true, false, 1000);
+        }
+        setState(databaseA, PROFILE_A, "movie300", false, true, 1000);
+        setState(databaseB, PROFILE_B, "movie0", false, true, 500);
+
+        assertEquals(0, syncA.sync(PROFILE_A));
+        assertEquals(301, syncB.sync(PROFILE_B));
+
+        for (int i = 0; i < 300; i++) {
+            WatchState state = getState(databaseB, PROFILE_B, "movie" + i);
+            assertTrue(state.isWatched());
+            assertFalse(state.isCurrent());
+            assertEquals(1000, state.getUpdatedAt());
+            assertFalse(state.isDirty());
+        }
+        assertTrue(getState(databaseB, PROFILE_B, "movie300").isCurrent());
+        assertNull(getState(databaseB, PROFILE_B, "movie301"));
+    }
+
+    @Test
+    public void sync_clearsTheDirtyFlagOfWhatWasSent() throws Exception {
+        for (int i = 0; i < 250; i++) {
+            setState(databaseA, PROFILE_A, "movie" + i, true, false, 1000);
+        }
+        setState(databaseA, PROFILE_A, "movie250", false, true, 1000);
+        assertEquals(251, databaseA.watchStateDAO().getDirtyChanges(PROFILE_A, 0, MOVIES).size());
+
+        syncA.sync(PROFILE_A);
+
+        assertTrue(databaseA.watchStateDAO().getDirtyChanges(PROFILE_A, 0, MOVIES).isEmpty());
+        assertFalse(getState(databaseA, PROFILE_A, "movie0").isDirty());
+
+        // Nothing new on either side: the next sync sends nothing and applies nothing
+        assertEquals(0, syncA.sync(PROFILE_A));
+    }
+
+    @Test
+    public void aConflict_isWonByTheNewerChangeOnBothDevices() throws Exception {
+        // A watched movie5 first, B later went back to it and made it current
+        setState(databaseA, PROFILE_A, "movie5", true, false, 2000);
+        setState(databaseA, PROFILE_A, "movie6", false, true, 2000);
+        setState(databaseB, PROFILE_B, "movie5", false, true, 3000);
+        // And the other way around for movie7
+        setState(databaseA, PROFILE_A, "movie7", true, false, 4000);
+        setState(databaseB, PROFILE_B, "movie7", false, false, 1000);
+
+        syncA.sync(PROFILE_A);
+        syncB.sync(PROFILE_B);
+        syncA.sync(PROFILE_A);
+
+        for (MovieDatabase database : new MovieDatabase[]{databaseA, databaseB}) {
+            int profileId = database == databaseA ? PROFILE_A : PROFILE_B;
+
+            WatchState movie5 = getState(database, profileId, "movie5");
+            assertFalse(movie5.isWatched());
+            assertTrue(movie5.isCurrent());
+            assertEquals(3000, movie5.getUpdatedAt());
+
+            WatchState movie7 = getState(database, profileId, "movie7");
+            assertTrue(movie7.isWatched());
+            assertEquals(4000, movie7.getUpdatedAt());
+
+            // movie6 was current on A before the newer movie5 was, the merge leaves only one current movie
+            assertEquals(1, database.watchStateDAO().getCurrentMovieCount(profileId));
+        }
+    }
+
+    // Room doesn't allow queries on the main thread, which is the thread of the test
+    private MovieDatabase open(String name, int profileId, boolean reversed) {
+        MovieDatabase database = MovieDatabase.configure(context, Room.databaseBuilder(context, MovieDatabase.class, name))
+                .allowMainThreadQueries()
+                .build();
+
+        List<CatalogMovie> movies = new ArrayList<>(MOVIES);
+        for (int i = 0; i < MOVIES; i++) {
+            int n = reversed ? MOVIES - 1 - i : i;
+            movies.add(new CatalogMovie("Movie " + n, "A hero must stop a powerful villain.", "movie" + n,
+                    "01/01/2019", 120, n + 1, 7.5f));
+        }
+        database.movieDAO().insertNew(movies);
+
+        Profile profile = new Profile(PROFILE);
+        profile.setId(profileId);
+        database.profileDAO().insert(profile);
+        return database;
+    }
+
+    // A change made on the device at the given time, not synced yet
+    private static void setState(MovieDatabase database, int profileId, String key, boolean watched, boolean current,
+                                 long updatedAt) {
+        int movieId = database.movieDAO().getIdByKey(key);
+        database.watchStateDAO().setState(new WatchState(profileId, movieId, watched, current, updatedAt, true));
+    }
+
+    private static WatchState getState(MovieDatabase database, int profileId, String key) {
+        return database.watchStateDAO().getState(profileId, database.movieDAO().getIdByKey(key));
+    }
+}
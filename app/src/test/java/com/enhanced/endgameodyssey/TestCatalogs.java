@@ -0,0 +1,63 @@
+package com.enhanced.endgameodyssey;
+
+import android.database.MatrixCursor;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * The catalogs and random watch progress the tests of the structures built over a MovieList (SessionPlan,
+ * RemainingRuntime) are checked against. MovieCatalog needs Android classes, so the tests that use these run
+ * with Robolectric.
+ */
+final class TestCatalogs {
+
+    private TestCatalogs() {
+    }
+
+    // The movies in timeline order, the way MovieDAO.getCatalogCursor() returns them
+    static MovieCatalog catalog(int[] runtimes) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"id", "title", "synopsis", "descriptionDeflated",
+                "imageFilename", "releaseDate", "runtimeMinutes", "timelinePosition", "rating"});
+        for (int i = 0; i < runtimes.length; i++) {
+            cursor.addRow(new Object[]{i + 1, "Movie " + i, "", new byte[0], "movie" + i, "01/01/2019",
+                    runtimes[i], i + 1, 7.5f});
+        }
+        return MovieCatalog.load(cursor);
+    }
+
+    // Up to 80 movies, some of them longer than a short session and some longer than every session
+    static MovieCatalog randomCatalog(Random random) {
+        int[] runtimes = new int[random.nextInt(81)];
+        for (int i = 0; i < runtimes.length; i++) {
+            runtimes[i] = random.nextInt(20) == 0 ? 400 + random.nextInt(200) : 60 + random.nextInt(120);
+        }
+        return catalog(runtimes);
+    }
+
+    // Anything from nothing to everything watched
+    static MovieList randomMovies(Random random, MovieCatalog catalog) {
+        double watchedShare = random.nextDouble();
+        BitSet watched = new BitSet();
+        for (int i = 0; i < catalog.size(); i++) {
+            if (random.nextDouble() < watchedShare) watched.set(i);
+        }
+        return new MovieList(catalog, watched, new BitSet());
+    }
+
+    // Mostly one watch action, sometimes a snap or an undo of a few movies at once. The current movie moves
+    // too, which changes a row without changing what is watched. The catalog must not be empty.
+    static MovieList randomAction(Random random, MovieList movies) {
+        MovieCatalog catalog = movies.getCatalog();
+
+        BitSet watched = BitSet.valueOf(movies.getWatchedBits());
+        int changes = random.nextInt(4) == 0 ? 1 + random.nextInt(5) : 1;
+        for (int i = 0; i < changes; i++) {
+            watched.flip(random.nextInt(catalog.size()));
+        }
+        BitSet current = new BitSet();
+        current.set(random.nextInt(catalog.size()));
+
+        return new MovieList(catalog, watched, current);
+    }
+}
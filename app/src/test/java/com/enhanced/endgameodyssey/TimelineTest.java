@@ -0,0 +1,103 @@
+package com.enhanced.endgameodyssey;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the Timeline, which runs on the development machine (host).
+ */
+public class TimelineTest {
+
+    // The catalog as it is seeded: 22 movies whose ids are not in timeline order
+    private static Timeline seeded() {
+        int[] ids = new int[22];
+        int[] positions = new int[22];
+        for (int i = 0; i < 22; i++) {
+            ids[i] = 100 + i;
+            positions[i] = 22 - i;
+        }
+        return new Timeline(ids, positions);
+    }
+
+    @Test
+    public void firstAndFinale_comeFromThePositions() {
+        Timeline timeline = seeded();
+
+        assertEquals(22, timeline.size());
+        assertEquals(121, timeline.getFirstId());
+        assertEquals(100, timeline.getFinaleId());
+        assertTrue(timeline.isFinale(22));
+        assertFalse(timeline.isFinale(21));
+    }
+
+    @Test
+    public void nextAndPrevious_followThePositionsNotTheIds() {
+        Timeline timeline = seeded();
+
+        assertEquals(120, timeline.getNextId(1));
+        assertEquals(100, timeline.getNextId(21));
+        assertEquals(Timeline.NO_MOVIE, timeline.getNextId(22));
+
+        assertEquals(121, timeline.getPreviousId(2));
+        assertEquals(Timeline.NO_MOVIE, timeline.getPreviousId(1));
+    }
+
+    @Test
+    public void gapsInThePositions_areSkipped() {
+        Timeline timeline = new Timeline(new int[]{7, 3, 5}, new int[]{30, 10, 25});
+
+        assertEquals(5, timeline.getNextId(10));
+        assertEquals(7, timeline.getNextId(25));
+        assertTrue(timeline.isFinale(30));
+
+        // A position without a movie, e.g. of one that was removed from the catalog
+        assertEquals(5, timeline.getNextId(20));
+        assertEquals(3, timeline.getPreviousId(20));
+        assertEquals(-1, timeline.indexOf(20));
+        assertEquals(1, timeline.indexOf(25));
+    }
+
+    @Test
+    public void negativeAndHugePositions_sortCorrectly() {
+        Timeline timeline = new Timeline(new int[]{1, 2, 3}, new int[]{Integer.MAX_VALUE, -5, 0});
+
+        assertEquals(2, timeline.getFirstId());
+        assertEquals(3, timeline.getNextId(-5));
+        assertEquals(1, timeline.getNextId(0));
+        assertTrue(timeline.isFinale(Integer.MAX_VALUE));
+        assertEquals(Timeline.NO_MOVIE, timeline.getNextId(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void emptyTimeline_hasNoMovies() {
+        Timeline timeline = new Timeline(new int[0], new int[0]);
+
+        assertEquals(Timeline.NO_MOVIE, timeline.getFirstId());
+        assertEquals(Timeline.NO_MOVIE, timeline.getFinaleId());
+        assertEquals(Timeline.NO_MOVIE, timeline.getNextId(1));
+        assertFalse(timeline.isFinale(1));
+    }
+
+    @Test
+    public void largeCatalog_resolvesEveryNextMovie() {
+        int size = 100000;
+        int[] ids = new int[size];
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i;
+            positions[i] = (size - i) * 3;
+        }
+        Timeline timeline = new Timeline(ids, positions);
+
+        for (int i = 1; i < size; i++) {
+            assertEquals(i - 1, timeline.getNextId(positions[i]));
+        }
+        assertTrue(timeline.isFinale(positions[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void everyMovie_needsAPosition() {
+        new Timeline(new int[]{1, 2}, new int[]{1});
+    }
+}